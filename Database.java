@@ -101,6 +101,9 @@ public class Database {
             return;
         }
         ArrayList<ArrayList<Object>> rows = tableData.results();
+        if(rows.isEmpty()){
+            System.out.println("Table is empty");
+        }
         ArrayList<Object> attrs = new ArrayList<>();
         for(Attribute attr: tableData.attrs()){
             attrs.add(attr.attributeName());
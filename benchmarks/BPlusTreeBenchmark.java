@@ -0,0 +1,71 @@
+package benchmarks;
+
+import common.RecordPointer;
+import indexing.BPlusTree;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Random;
+
+/**
+ * Compares the old B+ tree node capacity, 6 keys with the left node keeping 1 key on a split,
+ * against the capacity worked out from the page size with midpoint splits, and boxed keys
+ * against keys kept in an int array.
+ *
+ * Both trees get the same integer keys inserted in random order and then answer the same
+ * random lookups. The height is the number of nodes, and so index pages, a lookup reads.
+ * The trees are kept in memory so the old one fits; on disk every level is a page read.
+ *
+ * Usage: java benchmarks.BPlusTreeBenchmark [keys] [pageSize] [lookups]
+ */
+public class BPlusTreeBenchmark {
+
+    public static void main(String[] args) {
+        int keyCount = args.length > 0 ? Integer.parseInt(args[0]) : 1000000;
+        int pageSize = args.length > 1 ? Integer.parseInt(args[1]) : 4096;
+        int lookups = args.length > 2 ? Integer.parseInt(args[2]) : 1000000;
+
+        ArrayList<Integer> keys = new ArrayList<>(keyCount);
+        for (int i = 0; i < keyCount; i++) {
+            keys.add(i);
+        }
+        Collections.shuffle(keys, new Random(42));
+        int[] probes = new int[lookups];
+        Random random = new Random(7);
+        for (int i = 0; i < lookups; i++) {
+            probes[i] = random.nextInt(keyCount);
+        }
+
+        System.out.println(keyCount + " keys, " + pageSize + " byte pages, " + lookups + " lookups");
+        int maxKeys = BPlusTree.maxKeys(pageSize, "Integer");
+        run("max_keys 6, split 1, boxed keys", BPlusTree.inMemory(null, pageSize, 6, 1), keys, probes);
+        run("from page size, boxed keys", BPlusTree.inMemory(null, pageSize, maxKeys, -1), keys, probes);
+        run("from page size, int keys", BPlusTree.inMemory("Integer", pageSize, maxKeys, -1), keys, probes);
+    }
+
+    private static void run(String name, BPlusTree tree, ArrayList<Integer> keys, int[] probes) {
+        long start = System.nanoTime();
+        for (int i = 0; i < keys.size(); i++) {
+            tree.insertRecordPointer(new RecordPointer(keys.get(i) / 100, keys.get(i) % 100), keys.get(i));
+        }
+        long insertNanos = System.nanoTime() - start;
+
+        // Warm up, then time the same lookups
+        long found = 0;
+        for (int i = 0; i < Math.min(probes.length, 100000); i++) {
+            found += tree.search(probes[i]).size();
+        }
+        start = System.nanoTime();
+        for (int probe : probes) {
+            found += tree.search(probe).size();
+        }
+        long lookupNanos = System.nanoTime() - start;
+
+        System.out.println(name + ":");
+        System.out.println("  max keys per node: " + tree.getMaxKeys());
+        System.out.println("  height:            " + tree.getHeight() + " nodes per lookup");
+        System.out.printf("  insert:            %.2f us/key%n", insertNanos / 1000.0 / keys.size());
+        System.out.printf("  lookup:            %.3f us/lookup%n", lookupNanos / 1000.0 / probes.length);
+        System.out.println("  (found " + found + ")");
+    }
+}
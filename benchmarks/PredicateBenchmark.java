@@ -0,0 +1,148 @@
+package benchmarks;
+
+import common.Attribute;
+import common.Table;
+import conditionals.ColumnNode;
+import conditionals.ConditionalNode;
+import conditionals.Node;
+import conditionals.OperatorNode;
+import conditionals.ValueNode;
+import storagemanager.RecordHelper;
+
+import java.util.ArrayList;
+import java.util.Random;
+import java.util.function.Predicate;
+
+/**
+ * Compares filtering records the way OperatorNode used to, switching on the operator string
+ * and comparing through RecordHelper for every record, against the tests the conditionals
+ * tree compiles to.
+ *
+ * Both filter the same records held in memory, so only the cost of the test is measured.
+ * Each where clause is run a few times to warm up before it is timed.
+ *
+ * Usage: java benchmarks.PredicateBenchmark [records] [runs]
+ */
+public class PredicateBenchmark {
+
+    private static final int WARMUP = 5;
+
+    public static void main(String[] args) {
+        int recordCount = args.length > 0 ? Integer.parseInt(args[0]) : 1000000;
+        int runs = args.length > 1 ? Integer.parseInt(args[1]) : 10;
+
+        ArrayList<Attribute> attributes = new ArrayList<>();
+        Attribute id = new Attribute("id", "integer");
+        attributes.add(id);
+        attributes.add(new Attribute("x", "integer"));
+        attributes.add(new Attribute("y", "double"));
+        attributes.add(new Attribute("z", "varchar(10)"));
+        Table table = new Table("bench", attributes, id);
+
+        ArrayList<ArrayList<Object>> records = new ArrayList<>(recordCount);
+        Random random = new Random(42);
+        for (int i = 0; i < recordCount; i++) {
+            ArrayList<Object> record = new ArrayList<>();
+            record.add(i);
+            record.add(random.nextInt(1000));
+            record.add(random.nextDouble() * 100);
+            record.add("s" + random.nextInt(100));
+            records.add(record);
+        }
+
+        System.out.println(recordCount + " records, best of " + runs + " runs");
+        run("x < 500", table, records, runs, new String[][]{{"x", "<", "500"}});
+        run("y >= 50.0", table, records, runs, new String[][]{{"y", ">=", "50.0"}});
+        run("z = \"s3\"", table, records, runs, new String[][]{{"z", "=", "\"s3\""}});
+        run("x < 500 and y > 10.0 and z = \"s3\"", table, records, runs,
+                new String[][]{{"x", "<", "500"}, {"y", ">", "10.0"}, {"z", "=", "\"s3\""}});
+    }
+
+    /**
+     * Times one where clause, a list of comparisons joined by and
+     */
+    private static void run(String name, Table table, ArrayList<ArrayList<Object>> records, int runs, String[][] clauses) {
+        int[] columns = new int[clauses.length];
+        String[] operators = new String[clauses.length];
+        Object[] values = new Object[clauses.length];
+        Node tree = null;
+        for (int i = 0; i < clauses.length; i++) {
+            columns[i] = table.getColumnIndex(clauses[i][0]);
+            operators[i] = clauses[i][1];
+            ValueNode value = new ValueNode(clauses[i][2]);
+            values[i] = value.getValue();
+            Node node = new OperatorNode(new ColumnNode(clauses[i][0], table), value, clauses[i][1]);
+            tree = tree == null ? node : new ConditionalNode(tree, node, "and", table);
+        }
+        Predicate<ArrayList<Object>> compiled = tree.compile();
+
+        long interpretedNanos = Long.MAX_VALUE;
+        long compiledNanos = Long.MAX_VALUE;
+        int interpretedCount = 0;
+        int compiledCount = 0;
+        for (int run = 0; run < WARMUP + runs; run++) {
+            long start = System.nanoTime();
+            interpretedCount = 0;
+            for (ArrayList<Object> record : records) {
+                if (interpret(record, columns, operators, values)) {
+                    interpretedCount++;
+                }
+            }
+            long interpreted = System.nanoTime() - start;
+
+            start = System.nanoTime();
+            compiledCount = 0;
+            for (ArrayList<Object> record : records) {
+                if (compiled.test(record)) {
+                    compiledCount++;
+                }
+            }
+            long compiledRun = System.nanoTime() - start;
+            if (run >= WARMUP) {
+                interpretedNanos = Math.min(interpretedNanos, interpreted);
+                compiledNanos = Math.min(compiledNanos, compiledRun);
+            }
+        }
+
+        System.out.println(name + ":");
+        System.out.printf("  interpreted: %.2f ns/record (%d match)%n", (double) interpretedNanos / records.size(), interpretedCount);
+        System.out.printf("  compiled:    %.2f ns/record (%d match)%n", (double) compiledNanos / records.size(), compiledCount);
+    }
+
+    /**
+     * The old per record evaluation of OperatorNode
+     */
+    private static boolean interpret(ArrayList<Object> record, int[] columns, String[] operators, Object[] values) {
+        for (int i = 0; i < columns.length; i++) {
+            Object leftValue = record.get(columns[i]);
+            Object rightValue = values[i];
+            boolean matches;
+            switch (operators[i]) {
+                case ">":
+                    matches = RecordHelper.greaterThan(leftValue, rightValue);
+                    break;
+                case "<":
+                    matches = RecordHelper.lessThan(leftValue, rightValue);
+                    break;
+                case "=":
+                    matches = RecordHelper.equals(leftValue, rightValue);
+                    break;
+                case ">=":
+                    matches = RecordHelper.greaterThanEquals(leftValue, rightValue);
+                    break;
+                case "<=":
+                    matches = RecordHelper.lessThanEquals(leftValue, rightValue);
+                    break;
+                case "!=":
+                    matches = RecordHelper.notEquals(leftValue, rightValue);
+                    break;
+                default:
+                    return false;
+            }
+            if (!matches) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,181 @@
+package benchmarks;
+
+import catalog.ACatalog;
+import common.Attribute;
+import common.Table;
+import storagemanager.Page;
+import storagemanager.PageFormat;
+import storagemanager.StringCodec;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Random;
+
+/**
+ * Compares decoding a varchar heavy page the old way, one character at a time with string
+ * concatenation, against the StringCodec bulk decoding used by PageFormat.
+ *
+ * Usage: java benchmarks.StringDecodeBenchmark [pageSize] [iterations]
+ * Run with -Dpage.charset=utf-8 to measure UTF-8 pages.
+ */
+public class StringDecodeBenchmark {
+
+    private static final int WARMUP = 200;
+
+    public static void main(String[] args) throws IOException {
+        int pageSize = args.length > 0 ? Integer.parseInt(args[0]) : 16384;
+        int iterations = args.length > 1 ? Integer.parseInt(args[1]) : 2000;
+
+        File location = Files.createTempDirectory("stringbench").toFile();
+        ACatalog.createCatalog(location.getPath(), pageSize, 10);
+
+        ArrayList<Attribute> attributes = new ArrayList<>();
+        Attribute id = new Attribute("id", "Integer");
+        attributes.add(id);
+        attributes.add(new Attribute("name", "varchar(255)"));
+        attributes.add(new Attribute("description", "varchar(255)"));
+        attributes.add(new Attribute("code", "char(40)"));
+        Table table = new Table("bench", attributes, id);
+
+        Page page = new Page(table, 1);
+        Random random = new Random(42);
+        int key = 0;
+        while (true) {
+            ArrayList<Object> record = new ArrayList<>();
+            record.add(key++);
+            record.add(randomString(random, 100 + random.nextInt(155)));
+            record.add(randomString(random, 100 + random.nextInt(155)));
+            record.add(randomString(random, 40));
+            if (page.getRecordBytes(record) >= page.getFreeBytes()) {
+                break;
+            }
+            page.addRecord(table, record, page.getRecords().size());
+        }
+        int recordCount = page.getRecords().size();
+
+        byte[] legacyBytes = writeLegacy(page);
+        ByteBuffer pageBuffer = ByteBuffer.allocate(pageSize);
+        PageFormat.write(page, pageBuffer);
+
+        System.out.println("Records per page: " + recordCount);
+        System.out.println("Legacy page bytes: " + legacyBytes.length);
+        System.out.println("Current page bytes: " + pageBuffer.remaining()
+                + " (" + System.getProperty("page.charset", "utf-16") + ")");
+
+        for (int i = 0; i < WARMUP; i++) {
+            readLegacy(table, legacyBytes);
+            PageFormat.read(table, 1, pageBuffer.duplicate());
+        }
+
+        long start = System.nanoTime();
+        int checksum = 0;
+        for (int i = 0; i < iterations; i++) {
+            checksum += readLegacy(table, legacyBytes).size();
+        }
+        long legacyNanos = System.nanoTime() - start;
+
+        start = System.nanoTime();
+        for (int i = 0; i < iterations; i++) {
+            checksum += PageFormat.read(table, 1, pageBuffer.duplicate()).size();
+        }
+        long currentNanos = System.nanoTime() - start;
+
+        System.out.printf("Legacy decode:  %.1f us/page%n", legacyNanos / 1000.0 / iterations);
+        System.out.printf("Codec decode:   %.1f us/page%n", currentNanos / 1000.0 / iterations);
+        System.out.printf("Speedup:        %.1fx%n", (double) legacyNanos / currentNanos);
+
+        // The same strings through each codec on their own
+        ArrayList<String> values = new ArrayList<>();
+        for (ArrayList<Object> record : page.getRecords()) {
+            values.add((String) record.get(1));
+            values.add((String) record.get(2));
+        }
+        for (StringCodec codec : StringCodec.values()) {
+            ByteBuffer buffer = ByteBuffer.allocate(values.size() * (2 + 255 * 2));
+            for (String value : values) {
+                codec.write(value, buffer);
+            }
+            buffer.flip();
+            for (int i = 0; i < WARMUP; i++) {
+                checksum += decodeAll(codec, buffer.duplicate(), values.size());
+            }
+            start = System.nanoTime();
+            for (int i = 0; i < iterations; i++) {
+                checksum += decodeAll(codec, buffer.duplicate(), values.size());
+            }
+            long nanos = System.nanoTime() - start;
+            System.out.printf("%s: %d bytes, %.1f us for %d values%n",
+                    codec, buffer.remaining(), nanos / 1000.0 / iterations, values.size());
+        }
+        System.out.println("(checksum " + checksum + ")");
+    }
+
+    private static int decodeAll(StringCodec codec, ByteBuffer buffer, int count) {
+        int length = 0;
+        for (int i = 0; i < count; i++) {
+            length += codec.read(buffer).length();
+        }
+        return length;
+    }
+
+    private static String randomString(Random random, int length) {
+        StringBuilder builder = new StringBuilder(length);
+        for (int i = 0; i < length; i++) {
+            builder.append((char) ('a' + random.nextInt(26)));
+        }
+        return builder.toString();
+    }
+
+    /**
+     * The page layout used before PageFormat: writeChar for every character and
+     * char(n) padded with tabs
+     */
+    private static byte[] writeLegacy(Page page) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeInt(page.getPageId());
+        out.writeInt(page.getRecords().size());
+        for (ArrayList<Object> record : page.getRecords()) {
+            out.writeInt((Integer) record.get(0));
+            for (int i = 1; i <= 2; i++) {
+                String value = (String) record.get(i);
+                out.writeInt(value.length());
+                for (int c = 0; c < value.length(); c++) {
+                    out.writeChar(value.charAt(c));
+                }
+            }
+            String code = (String) record.get(3);
+            out.writeInt(40);
+            for (int c = 0; c < 40; c++) {
+                out.writeChar(c < code.length() ? code.charAt(c) : '\t');
+            }
+        }
+        return bytes.toByteArray();
+    }
+
+    private static ArrayList<ArrayList<Object>> readLegacy(Table table, byte[] data) throws IOException {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(data));
+        in.readInt();
+        int count = in.readInt();
+        ArrayList<ArrayList<Object>> records = new ArrayList<>();
+        for (int r = 0; r < count; r++) {
+            ArrayList<Object> record = new ArrayList<>();
+            record.add(in.readInt());
+            for (int i = 1; i <= 3; i++) {
+                int length = in.readInt();
+                String value = "";
+                for (int c = 0; c < length; c++) {
+                    char ch = in.readChar();
+                    if (ch != '\t') {
+                        value += ch;
+                    }
+                }
+                record.add(value);
+            }
+            records.add(record);
+        }
+        return records;
+    }
+}
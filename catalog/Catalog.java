@@ -7,10 +7,12 @@ import indexing.BPTreeNode;
 import indexing.BPlusTree;
 import storagemanager.AStorageManager;
 import storagemanager.FileManager;
+import storagemanager.PageAllocator;
 import storagemanager.StorageManager;
 
 import java.io.*;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.HashMap;
 import java.util.Locale;
 
@@ -22,6 +24,7 @@ public class Catalog extends ACatalog {
     private File catalogFile;
     HashMap<String,Table> tables = new HashMap<String,Table>();
     HashMap<String, BPlusTree> indexes = new HashMap<>();
+    private PageAllocator pageAllocator;
 
     public Catalog(String location, int pageSize, int pageBufferSize) {
         this.location = location;
@@ -39,6 +42,24 @@ public class Catalog extends ACatalog {
         }
         this.pageSize = pageSize;
         this.pageBufferSize = pageBufferSize;
+        if(pageAllocator == null){
+            pageAllocator = new PageAllocator(maxPageId() + 1);
+        }
+    }
+
+    /**
+     * Used for catalogs saved before the page allocator was, page IDs continue after the
+     * highest one any table knows about
+     * @return the highest page ID in use; 0 if there are no pages
+     */
+    private int maxPageId() {
+        int maxPageId = 0;
+        for(Table table : tables.values()){
+            for(Integer pageId : table.getPageList()){
+                maxPageId = Math.max(maxPageId, pageId);
+            }
+        }
+        return maxPageId;
     }
 
     @Override
@@ -72,6 +93,20 @@ public class Catalog extends ACatalog {
         return null;
     }
 
+    /**
+     * @return every table currently in the catalog
+     */
+    public Collection<Table> getTables() {
+        return tables.values();
+    }
+
+    /**
+     * @return the allocator handing out page IDs for this database
+     */
+    public PageAllocator getPageAllocator() {
+        return pageAllocator;
+    }
+
     @Override
     public ITable getTable(String tableName) {
         if(containsTable(tableName.toLowerCase())){
@@ -83,6 +118,11 @@ public class Catalog extends ACatalog {
     @Override
     public boolean dropTable(String tableName) {
         if(containsTable(tableName)){
+            // Its pages are dropped from the buffer and their IDs and segment file released
+            AStorageManager sm = AStorageManager.getStorageManager();
+            if(sm != null){
+                sm.clearTableData(getTable(tableName));
+            }
             tables.remove(tableName);
               return true;
         }
@@ -124,10 +164,23 @@ public class Catalog extends ACatalog {
     }
 
     /**
-     * FOR LATER PHASES
+     * Adds an index on a column and builds it from the records already in the table
      */
     @Override
     public boolean addIndex(String tableName, String indexName, String attrName) {
+        return addIndex(tableName, indexName, attrName,
+                Boolean.parseBoolean(System.getProperty("index.parallelsort", "true")));
+    }
+
+    /**
+     * Adds an index on a column and builds it bottom up from the records already in the table
+     * @param tableName the table to index
+     * @param indexName the name of the index
+     * @param attrName the column to index
+     * @param parallelSort true to sort the keys of the table on every core
+     * @return true if successful; false otherwise
+     */
+    public boolean addIndex(String tableName, String indexName, String attrName, boolean parallelSort) {
         if(containsTable(tableName)){
             Table table = (Table) getTable(tableName);
             Attribute attr = table.getAttrByName(attrName);
@@ -136,7 +189,8 @@ public class Catalog extends ACatalog {
                 return false;
             }
             StorageManager sm = (StorageManager) AStorageManager.getStorageManager();
-            return table.addIndex(attr.getAttributeName()) && sm.populateIndex(table,attrName);
+            return table.addIndex(attr.getAttributeName())
+                    && sm.populateIndex(table, attr.getAttributeName(), parallelSort);
         }
         else {
             return false;
@@ -164,7 +218,7 @@ public class Catalog extends ACatalog {
                 }
             }
             FileOutputStream fout = new FileOutputStream(catalogFile);
-            DataOutputStream dos = new DataOutputStream(fout);
+            DataOutputStream dos = new DataOutputStream(new BufferedOutputStream(fout));
             // Write out global vars
             dos.writeInt(pageBufferSize);
             dos.writeInt(pageSize);
@@ -200,6 +254,28 @@ public class Catalog extends ACatalog {
                     dos.writeInt(pageID);
                 }
             }
+            // Page allocator, fence keys and indexes go last so older catalogs without them still load
+            pageAllocator.write(dos);
+            dos.writeInt(tables.size());
+            for(Table table : tables.values()){
+                FileManager.writeChars(table.getTableName().toLowerCase(),dos);
+                dos.writeInt(table.getPageList().size());
+                for(int position = 0; position < table.getPageList().size(); position++){
+                    writeKey(table.getPageMinKey(position),dos);
+                    writeKey(table.getPageMaxKey(position),dos);
+                }
+            }
+            // Indexes keep their nodes in their own files, only the indexed columns are listed here
+            dos.writeInt(tables.size());
+            for(Table table : tables.values()){
+                FileManager.writeChars(table.getTableName().toLowerCase(),dos);
+                ArrayList<String> columns = table.getIndexedColumns();
+                dos.writeInt(columns.size());
+                for(String column : columns){
+                    FileManager.writeChars(column,dos);
+                }
+            }
+            dos.close();
             return true;
         } catch (IOException e) {
             System.err.println("Error writing catalog to disk");
@@ -208,11 +284,49 @@ public class Catalog extends ACatalog {
         return false;
     }
 
+    /**
+     * Writes a primary key value preceded by a tag for its type
+     * @param key the key to write, may be null
+     * @param dos the stream to write to
+     */
+    private static void writeKey(Object key, DataOutputStream dos) throws IOException {
+        if(key instanceof Integer){
+            dos.writeByte(1);
+            dos.writeInt((Integer) key);
+        }else if(key instanceof Double){
+            dos.writeByte(2);
+            dos.writeDouble((Double) key);
+        }else if(key instanceof Boolean){
+            dos.writeByte(3);
+            dos.writeBoolean((Boolean) key);
+        }else if(key instanceof String){
+            dos.writeByte(4);
+            FileManager.writeChars((String) key,dos);
+        }else{
+            dos.writeByte(0);
+        }
+    }
+
+    private static Object readKey(DataInputStream dis) throws IOException {
+        switch(dis.readByte()){
+            case 1:
+                return dis.readInt();
+            case 2:
+                return dis.readDouble();
+            case 3:
+                return dis.readBoolean();
+            case 4:
+                return FileManager.readChars(dis);
+            default:
+                return null;
+        }
+    }
+
     private void loadCatalogFromDisk(){
         try {
             FileInputStream fin  = new FileInputStream(catalogFile);
 
-            DataInputStream dis = new DataInputStream(fin);
+            DataInputStream dis = new DataInputStream(new BufferedInputStream(fin));
             // First two ints are pageBuf size and pageSize
             pageBufferSize = dis.readInt();
             pageSize = dis.readInt();
@@ -254,6 +368,38 @@ public class Catalog extends ACatalog {
                 tables.put(tableName,newTable);
 
             }
+            if(dis.available() > 0){
+                pageAllocator = PageAllocator.read(dis);
+            }
+            if(dis.available() > 0){
+                int numFenceTables = dis.readInt();
+                for(int i = 0; i < numFenceTables; i++){
+                    Table table = tables.get(FileManager.readChars(dis));
+                    int numPages = dis.readInt();
+                    for(int position = 0; position < numPages; position++){
+                        Object minKey = readKey(dis);
+                        Object maxKey = readKey(dis);
+                        // Tables without fences get them rebuilt from their pages on first use
+                        if(table != null && numPages == table.getPageList().size()){
+                            table.setPageFence(position,minKey,maxKey);
+                        }
+                    }
+                }
+            }
+            if(dis.available() > 0){
+                int numIndexTables = dis.readInt();
+                for(int i = 0; i < numIndexTables; i++){
+                    Table table = tables.get(FileManager.readChars(dis));
+                    int numIndexes = dis.readInt();
+                    for(int j = 0; j < numIndexes; j++){
+                        String column = FileManager.readChars(dis);
+                        if(table != null){
+                            table.loadIndex(column);
+                        }
+                    }
+                }
+            }
+            dis.close();
 
         } catch (IOException e) {
             System.err.println("Error reading in catalog file. Delete the catalog from the database directory and try again");
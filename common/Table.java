@@ -3,10 +3,13 @@ package common;
 import catalog.ACatalog;
 import indexing.BPlusTree;
 import storagemanager.AStorageManager;
+import storagemanager.RecordHelper;
 import storagemanager.StorageManager;
 
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.HashMap;
+import java.util.HashSet;
 
 public class Table implements ITable {
 
@@ -21,11 +24,17 @@ public class Table implements ITable {
     private String index;
 
     private HashMap<String,BPlusTree> indexes = new HashMap<>();
+    // Indexes saved to disk that have not been opened yet
+    private HashSet<String> storedIndexes = new HashSet<>();
     private ArrayList<Integer> pageList = new ArrayList<>();
+    // Fence keys of every page in pageList: no primary key on the page is below the min or above the max.
+    // Pages never overlap, so both lists are sorted the same way as pageList.
+    private ArrayList<Object> pageMinKeys = new ArrayList<>();
+    private ArrayList<Object> pageMaxKeys = new ArrayList<>();
 
     public Table(String tableName, ArrayList<Attribute> attributes, Attribute primaryKey) {
         this.tableName = tableName;
-        this.attributes = attributes;
+        this.attributes = new ArrayList<>(attributes);
         this.primaryKey = primaryKey;
         nonNullAttributes.add(primaryKey);
     }
@@ -139,7 +148,7 @@ public class Table implements ITable {
 
     @Override
     public boolean addIndex(String attributeName) {
-        if(indexes.containsKey(attributeName)){
+        if(indexes.containsKey(attributeName) || storedIndexes.contains(attributeName)){
             return false;
         }
         if(containsColumn(attributeName)) {
@@ -155,18 +164,89 @@ public class Table implements ITable {
             return false;
         }
         pageList.add(pageID);
+        pageMinKeys.add(null);
+        pageMaxKeys.add(null);
         return true;
     }
 
+    /**
+     * Removes the page at the provided position of the page list along with its fence keys
+     * @param position the position of the page in the page list
+     */
+    public void removePage(int position) {
+        pageList.remove(position);
+        pageMinKeys.remove(position);
+        pageMaxKeys.remove(position);
+    }
+
+    public Object getPageMinKey(int position) {
+        return pageMinKeys.get(position);
+    }
+
+    public Object getPageMaxKey(int position) {
+        return pageMaxKeys.get(position);
+    }
+
+    /**
+     * Sets the fence keys of the page at the provided position
+     * @param position the position of the page in the page list
+     * @param minKey the smallest primary key on the page
+     * @param maxKey the largest primary key on the page
+     */
+    public void setPageFence(int position, Object minKey, Object maxKey) {
+        pageMinKeys.set(position, minKey);
+        pageMaxKeys.set(position, maxKey);
+    }
+
+    /**
+     * @return true if any page in the page list has no fence keys yet
+     */
+    public boolean hasMissingFences() {
+        return pageMaxKeys.contains(null);
+    }
+
+    /**
+     * Binary searches the fence keys for the page a primary key belongs on
+     * @param pkValue the primary key to look for
+     * @return the position of the first page whose max key is not below the key; the number of
+     * pages if the key is above every page
+     */
+    public int findPagePosition(Object pkValue) {
+        int low = 0;
+        int high = pageList.size();
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (RecordHelper.compare(pageMaxKeys.get(mid), pkValue) < 0) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
     public ArrayList<Integer> getPageList() {
         return pageList;
     }
 
+    /**
+     * Empties the page list along with its fence keys
+     */
+    public void clearPageList() {
+        pageList.clear();
+        pageMinKeys.clear();
+        pageMaxKeys.clear();
+    }
+
     public void insertPage(Integer pageId, Integer pageId1, Integer pageId2) {
         int index = pageList.indexOf(pageId);
         pageList.remove(pageId);
         pageList.add(index,pageId1);
         pageList.add(index+1,pageId2);
+        pageMinKeys.set(index, null);
+        pageMinKeys.add(index+1, null);
+        pageMaxKeys.set(index, null);
+        pageMaxKeys.add(index+1, null);
     }
 
     public boolean checkNonNullAttributes(ArrayList<Object> record) {
@@ -194,6 +274,8 @@ public class Table implements ITable {
     public void clear() {
         this.primaryKey = null;
         this.pageList.clear();
+        this.pageMinKeys.clear();
+        this.pageMaxKeys.clear();
         this.attributes.clear();
         this.foreignKey = null;
         this.foreignKeys.clear();
@@ -202,13 +284,60 @@ public class Table implements ITable {
 
     }
 
+    /**
+     * Marks an index saved to disk, it is opened the first time it is used
+     * @param attributeName the name of the indexed column
+     */
+    public void loadIndex(String attributeName) {
+        if(!indexes.containsKey(attributeName)){
+            storedIndexes.add(attributeName);
+        }
+    }
+
+    /**
+     * @return the names of every indexed column
+     */
+    public ArrayList<String> getIndexedColumns() {
+        ArrayList<String> columns = new ArrayList<>(indexes.keySet());
+        columns.addAll(storedIndexes);
+        return columns;
+    }
+
+    /**
+     * Closes every index of the table and deletes their files
+     * @return true if successful; false otherwise
+     */
+    public boolean dropIndexes() {
+        boolean success = true;
+        for (BPlusTree tree : indexes.values()) {
+            success = tree.delete() && success;
+        }
+        for (String attributeName : storedIndexes) {
+            success = BPlusTree.delete(this, attributeName) && success;
+        }
+        indexes.clear();
+        storedIndexes.clear();
+        return success;
+    }
+
+    /**
+     * @return the indexes that are open
+     */
+    public Collection<BPlusTree> getOpenIndexes() {
+        return indexes.values();
+    }
+
     public boolean hasIndex(Attribute primaryKey) {
-        return indexes.containsKey(primaryKey.getAttributeName());
+        return indexes.containsKey(primaryKey.getAttributeName()) || storedIndexes.contains(primaryKey.getAttributeName());
     }
 
     public BPlusTree getIndex(Attribute primaryKey) {
         if(containsColumn(primaryKey.getAttributeName())) {
-            return indexes.get(primaryKey.getAttributeName());
+            String attributeName = primaryKey.getAttributeName();
+            if(storedIndexes.remove(attributeName)){
+                indexes.put(attributeName, new BPlusTree(tableName + "." + attributeName));
+            }
+            return indexes.get(attributeName);
         }
         System.err.println("Index name not found");
         return null;
@@ -3,22 +3,43 @@ package conditionals;
 import catalog.ACatalog;
 import common.Attribute;
 import common.Table;
+import operators.Relation;
 import storagemanager.RecordHelper;
 import storagemanager.StorageManager;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.function.Predicate;
 
 public class ColumnNode extends Node{
 
     private final Table table;
     private int columnIndex = -1;
     private String columnName;
+    private Attribute attribute;
 
     public ColumnNode(String columnName, Table table){
         this.table = table;
-        columnName = RecordHelper.checkTableColumns(table.getAttributes(),columnName);
-        columnIndex = table.getColumnIndex(columnName);
+        // A stored table names its columns without the table, so <tablename>.<column_name> is cut down
+        String prefix = table.getTableName() + ".";
+        if(columnName.toLowerCase().startsWith(prefix.toLowerCase())){
+            columnName = columnName.substring(prefix.length());
+        }
+        this.columnName = RecordHelper.checkTableColumns(table.getAttributes(),columnName);
+        columnIndex = table.getColumnIndex(this.columnName);
+        attribute = columnIndex == -1 ? null : table.getAttributes().get(columnIndex);
+    }
+
+    /**
+     * A column of rows held in memory. It has no table, so it is only compared through compile().
+     * @param columnName the column, as <column_name> or <tablename>.<column_name>
+     * @param relation the rows the column is in
+     */
+    public ColumnNode(String columnName, Relation relation){
+        this.table = null;
+        this.columnName = columnName.strip();
+        columnIndex = relation.getColumnIndex(this.columnName);
+        attribute = columnIndex == -1 ? null : relation.getAttributes().get(columnIndex);
     }
 
 
@@ -26,11 +47,31 @@ public class ColumnNode extends Node{
         return columnIndex;
     }
 
+    /**
+     * @return the stored table the column is in; null for a column of rows held in memory
+     */
+    public Table getTable(){
+        return table;
+    }
+
+    /**
+     * @return the attribute of the column; null if the column is not in the table
+     */
+    public Attribute getAttribute(){
+        return attribute;
+    }
+
     @Override
     public ArrayList<ArrayList<Object>> evaluate() {
         return StorageManager.getStorageManager().getRecords(table);
     }
 
+    @Override
+    public Predicate<ArrayList<Object>> compile() {
+        //not used for column nodes, they are compared by an OperatorNode
+        return null;
+    }
+
     public String toString(){
         return "Column " + columnName;
     }
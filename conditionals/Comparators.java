@@ -0,0 +1,181 @@
+package conditionals;
+
+import java.util.ArrayList;
+import java.util.function.IntPredicate;
+import java.util.function.Predicate;
+
+/**
+ * Record tests for a comparison, specialized for the types of its two sides. The types are
+ * known once the where clause is parsed, so the test of each record casts straight to the
+ * column type instead of going through the instanceof checks of RecordHelper.
+ *
+ * The tests give the same answers as RecordHelper: a null in the column passes <, <=, > and >=
+ * and fails =. Type pairs without a specialized test, and !=, return null and are left to
+ * RecordHelper.
+ */
+final class Comparators {
+
+    private Comparators() {
+    }
+
+    /**
+     * @param type the attribute type of the column
+     * @param column the index of the column in a record
+     * @param operator the comparison
+     * @param value the constant the column is compared to
+     * @return the test of a record; null if there is no specialized test
+     */
+    static Predicate<ArrayList<Object>> columnToValue(String type, int column, String operator, Object value) {
+        type = type.toLowerCase();
+        if (type.equals("integer") && value instanceof Integer) {
+            return intColumn(column, operator, (Integer) value);
+        } else if (type.equals("double") && value instanceof Double) {
+            return doubleColumn(column, operator, (Double) value);
+        } else if ((type.equals("integer") || type.equals("double")) && value instanceof Number
+                && !operator.equals("=")) {
+            // An Integer and a Double are ordered by value, but not equal in the same way
+            return numberColumn(column, operator, ((Number) value).doubleValue());
+        } else if ((type.startsWith("varchar(") || type.startsWith("char(")) && value instanceof String) {
+            return stringColumn(column, operator, (String) value);
+        }
+        return null;
+    }
+
+    private static Predicate<ArrayList<Object>> intColumn(int column, String operator, int value) {
+        switch (operator) {
+            case "=":
+                return record -> { Object v = record.get(column); return v != null && (Integer) v == value; };
+            case "<":
+                return record -> { Object v = record.get(column); return v == null || (Integer) v < value; };
+            case "<=":
+                return record -> { Object v = record.get(column); return v == null || (Integer) v <= value; };
+            case ">":
+                return record -> { Object v = record.get(column); return v == null || (Integer) v > value; };
+            case ">=":
+                return record -> { Object v = record.get(column); return v == null || (Integer) v >= value; };
+            default:
+                return null;
+        }
+    }
+
+    private static Predicate<ArrayList<Object>> doubleColumn(int column, String operator, double value) {
+        switch (operator) {
+            case "=":
+                return record -> { Object v = record.get(column); return v != null && (Double) v == value; };
+            case "<":
+                return record -> { Object v = record.get(column); return v == null || (Double) v < value; };
+            case "<=":
+                return record -> { Object v = record.get(column); return v == null || (Double) v <= value; };
+            case ">":
+                return record -> { Object v = record.get(column); return v == null || (Double) v > value; };
+            case ">=":
+                return record -> { Object v = record.get(column); return v == null || (Double) v >= value; };
+            default:
+                return null;
+        }
+    }
+
+    private static Predicate<ArrayList<Object>> numberColumn(int column, String operator, double value) {
+        switch (operator) {
+            case "<":
+                return record -> { Object v = record.get(column); return v == null || ((Number) v).doubleValue() < value; };
+            case "<=":
+                return record -> { Object v = record.get(column); return v == null || ((Number) v).doubleValue() <= value; };
+            case ">":
+                return record -> { Object v = record.get(column); return v == null || ((Number) v).doubleValue() > value; };
+            case ">=":
+                return record -> { Object v = record.get(column); return v == null || ((Number) v).doubleValue() >= value; };
+            default:
+                return null;
+        }
+    }
+
+    private static Predicate<ArrayList<Object>> stringColumn(int column, String operator, String value) {
+        switch (operator) {
+            case "=":
+                return record -> value.equals(record.get(column));
+            case "<":
+                return record -> { Object v = record.get(column); return v == null || ((String) v).compareTo(value) < 0; };
+            case "<=":
+                return record -> { Object v = record.get(column); return v == null || ((String) v).compareTo(value) <= 0; };
+            case ">":
+                return record -> { Object v = record.get(column); return v == null || ((String) v).compareTo(value) > 0; };
+            case ">=":
+                return record -> { Object v = record.get(column); return v == null || ((String) v).compareTo(value) >= 0; };
+            default:
+                return null;
+        }
+    }
+
+    /**
+     * Compares two columns of the same record. Both must be of the same type; the outcome of
+     * the comparison is chosen once and tested on the order of the two values.
+     * @param leftType the attribute type of the left column
+     * @param left the index of the left column
+     * @param rightType the attribute type of the right column
+     * @param right the index of the right column
+     * @param operator the comparison
+     * @return the test of a record; null if there is no specialized test
+     */
+    static Predicate<ArrayList<Object>> columnToColumn(String leftType, int left, String rightType, int right, String operator) {
+        IntPredicate outcome = outcome(operator);
+        if (outcome == null || !leftType.equalsIgnoreCase(rightType)) {
+            return null;
+        }
+        boolean equality = operator.equals("=");
+        String type = leftType.toLowerCase();
+        if (type.equals("integer")) {
+            return record -> {
+                Object a = record.get(left);
+                Object b = record.get(right);
+                if (a == null || b == null) {
+                    return !equality && a == null && b != null;
+                }
+                return outcome.test(Integer.compare((Integer) a, (Integer) b));
+            };
+        } else if (type.equals("double")) {
+            return record -> {
+                Object a = record.get(left);
+                Object b = record.get(right);
+                if (a == null || b == null) {
+                    return !equality && a == null && b != null;
+                }
+                double x = (Double) a;
+                double y = (Double) b;
+                return outcome.test(x < y ? -1 : (x > y ? 1 : 0));
+            };
+        } else if (type.startsWith("varchar(") || type.startsWith("char(")) {
+            return record -> {
+                Object a = record.get(left);
+                Object b = record.get(right);
+                if (a == null || b == null) {
+                    return !equality && a == null && b != null;
+                }
+                return outcome.test(((String) a).compareTo((String) b));
+            };
+        }
+        return null;
+    }
+
+    /**
+     * @param operator the comparison
+     * @return the test of the order of two values the comparison stands for; null for != and
+     *         anything that is not a comparison
+     */
+    private static IntPredicate outcome(String operator) {
+        switch (operator) {
+            case "=":
+                return order -> order == 0;
+            case "<":
+                return order -> order < 0;
+            case "<=":
+                return order -> order <= 0;
+            case ">":
+                return order -> order > 0;
+            case ">=":
+                return order -> order >= 0;
+            default:
+                return null;
+        }
+    }
+}
@@ -4,6 +4,7 @@ import common.Table;
 
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.function.Predicate;
 
 public class ConditionalNode extends Node {
 
@@ -19,25 +20,48 @@ public class ConditionalNode extends Node {
 
     @Override
     public ArrayList<ArrayList<Object>> evaluate() {
-        ArrayList<ArrayList<Object>> results = new ArrayList<>();
-        ArrayList<ArrayList<Object>> leftResults = left.evaluate();
-        ArrayList<ArrayList<Object>> rightResults = right.evaluate();
+        return evaluate(table);
+    }
+
+    public String getConditional() {
+        return conditional;
+    }
+
+    /**
+     * Compiles both sides and joins them, the right side is only tested when the left side
+     * does not already decide the record
+     */
+    @Override
+    public Predicate<ArrayList<Object>> compile() {
+        if (left == null || right == null) {
+            return null;
+        }
+        Predicate<ArrayList<Object>> leftPredicate = left.compile();
+        Predicate<ArrayList<Object>> rightPredicate = right.compile();
+        if (leftPredicate == null || rightPredicate == null) {
+            return null;
+        }
         if (conditional.equalsIgnoreCase("and")) {
-            for (ArrayList<Object> leftRecord : leftResults) {
-                Object leftKey = leftRecord.get(table.getPrimaryKeyIndex());
-                for (ArrayList<Object> rightRecord : rightResults) {
-                    Object rightKey = rightRecord.get(table.getPrimaryKeyIndex());
-                    if (leftKey.equals(rightKey)) {
-                        results.add(leftRecord);
-                        break;
-                    }
-                }
-            }
+            return leftPredicate.and(rightPredicate);
         } else if (conditional.equalsIgnoreCase("or")) {
-            results.addAll(leftResults);
-            results.addAll(rightResults);
+            return leftPredicate.or(rightPredicate);
+        }
+        System.err.println("Invalid conditional in 'where' clause: " + conditional);
+        return null;
+    }
+
+    /**
+     * Every record of an and is in the records of both sides, so either side that can use an
+     * index narrows the records to check. An or needs every record of both sides and is not
+     * looked up.
+     */
+    @Override
+    ArrayList<ArrayList<Object>> indexLookup() {
+        if (!conditional.equalsIgnoreCase("and") || left == null || right == null) {
+            return null;
         }
-        return results;
+        ArrayList<ArrayList<Object>> records = left.indexLookup();
+        return records != null ? records : right.indexLookup();
     }
 
     public String toString(){
@@ -1,6 +1,14 @@
 package conditionals;
 
+import common.Table;
+import operators.Filter;
+import operators.ListScan;
+import operators.Operator;
+import operators.Relation;
+import operators.TableScan;
+
 import java.util.ArrayList;
+import java.util.function.Predicate;
 
 public abstract class Node {
 
@@ -9,6 +17,57 @@ public abstract class Node {
 
     public abstract ArrayList<ArrayList<Object>> evaluate();
 
+    /**
+     * Compiles the node into a test of a single record, so a whole where clause is checked in
+     * one pass over the table
+     * @return the test; null if the node cannot be compiled
+     */
+    public abstract Predicate<ArrayList<Object>> compile();
+
+    /**
+     * Finds the records of the node through an index
+     * @return the records, which may include some that do not match the whole node; null if no
+     *         index can be used
+     */
+    ArrayList<ArrayList<Object>> indexLookup() {
+        return null;
+    }
+
+    /**
+     * Plans the node as a filter over the records of a table. If part of the node can use an
+     * index only the records it finds are checked, otherwise the table is scanned. Either way
+     * the records come in primary key order.
+     * @param table the table the node is on
+     * @return the filter; null if the node cannot be compiled
+     */
+    public Operator toOperator(Table table) {
+        Predicate<ArrayList<Object>> predicate = compile();
+        if (predicate == null) {
+            return null;
+        }
+        ArrayList<ArrayList<Object>> candidates = indexLookup();
+        Operator records = candidates == null ? new TableScan(table)
+                : new ListScan(new Relation(TableScan.attributesOf(table), candidates));
+        return new Filter(records, predicate);
+    }
+
+    /**
+     * Finds every record of a table that matches the node, through the filter of toOperator()
+     * @param table the table the node is on
+     * @return the matching records, in primary key order; null upon error
+     */
+    ArrayList<ArrayList<Object>> evaluate(Table table) {
+        Operator filter = toOperator(table);
+        if (filter == null) {
+            return null;
+        }
+        ArrayList<ArrayList<Object>> results = new ArrayList<>();
+        for (ArrayList<Object> record = filter.next(); record != null; record = filter.next()) {
+            results.add(record);
+        }
+        return results;
+    }
+
     public String toString(){
         return left.toString() + " " + right.toString();
     }
@@ -1,5 +1,8 @@
 package conditionals;
 
+import common.RecordPointer;
+import common.Table;
+import indexing.BPlusTree;
 import storagemanager.BufferManager;
 import storagemanager.RecordHelper;
 import storagemanager.StorageManager;
@@ -7,8 +10,12 @@ import common.Attribute;
 
 import java.nio.Buffer;
 import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Set;
+import java.util.function.BiPredicate;
+import java.util.function.Predicate;
 
 public class OperatorNode extends Node {
 
@@ -21,101 +28,146 @@ public class OperatorNode extends Node {
     }
 
     public ArrayList<ArrayList<Object>> evaluate() {
-        ArrayList<ArrayList<Object>> results = new ArrayList<>();
-        ArrayList<ArrayList<Object>> leftResults = left.evaluate();
+        return evaluate(((ColumnNode) left).getTable());
+    }
+
+    public String getOperator() {
+        return operator;
+    }
+
+    /**
+     * Compiles the comparison into a test of a record. The operator and the types of both
+     * sides are looked up once here instead of for every record, see Comparators; types it has
+     * no test for are compared through RecordHelper. A column compared to another column is
+     * checked within the same record.
+     */
+    @Override
+    public Predicate<ArrayList<Object>> compile() {
+        BiPredicate<Object, Object> comparison = comparison(operator);
+        if (comparison == null) {
+            System.err.println("Invalid operation in 'where' clause: " + operator);
+            return null;
+        }
+        ColumnNode column = (ColumnNode) left;
+        int leftIndex = column.getColumnIndex();
+        Predicate<ArrayList<Object>> specialized;
         if (right instanceof ValueNode) {
-            for (ArrayList<Object> leftRecord : leftResults) {
-                int columnIndex = ((ColumnNode) left).getColumnIndex();
+            Object value = ((ValueNode) right).getValue();
+            specialized = Comparators.columnToValue(column.getAttribute().getAttributeType(), leftIndex, operator, value);
+            return specialized != null ? specialized : record -> comparison.test(record.get(leftIndex), value);
+        }
+        ColumnNode other = (ColumnNode) right;
+        int rightIndex = other.getColumnIndex();
+        specialized = Comparators.columnToColumn(column.getAttribute().getAttributeType(), leftIndex,
+                other.getAttribute().getAttributeType(), rightIndex, operator);
+        return specialized != null ? specialized : record -> comparison.test(record.get(leftIndex), record.get(rightIndex));
+    }
 
-                Object leftValue = leftRecord.get(columnIndex);
-                Object rightValue = ((ValueNode) right).getValue();
+    /**
+     * @param operator the operator of a where clause
+     * @return the comparison the operator stands for; null if it is not an operator
+     */
+    private static BiPredicate<Object, Object> comparison(String operator) {
+        switch (operator) {
+            case ">":
+                return RecordHelper::greaterThan;
+            case "<":
+                return RecordHelper::lessThan;
+            case "=":
+                return RecordHelper::equals;
+            case ">=":
+                return RecordHelper::greaterThanEquals;
+            case "<=":
+                return RecordHelper::lessThanEquals;
+            case "!=":
+                return RecordHelper::notEquals;
+            default:
+                return null;
+        }
+    }
 
-                switch (operator) {
-                    case ">":
-                        if (RecordHelper.greaterThan(leftValue, rightValue)) {
-                            results.add(leftRecord);
-                        }
-                        break;
-                    case "<":
-                        if (RecordHelper.lessThan(leftValue, rightValue)) {
-                            results.add(leftRecord);
-                        }
-                        break;
-                    case "=":
-                        if (RecordHelper.equals(leftValue, rightValue)) {
-                            results.add(leftRecord);
-                        }
-                        break;
-                    case ">=":
-                        if (RecordHelper.greaterThanEquals(leftValue, rightValue)) {
-                            results.add(leftRecord);
-                        }
-                        break;
-                    case "<=":
-                        if (RecordHelper.lessThanEquals(leftValue, rightValue)) {
-                            results.add(leftRecord);
-                        }
-                        break;
-                    case "!=":
-                        if (RecordHelper.notEquals(leftValue, rightValue)) {
-                            results.add(leftRecord);
-                        }
-                        break;
-                    default:
-                        System.err.println("Invalid operation in 'where' clause: " + operator);
-                        return null;
-                }
-            }
-        } else {
-            ArrayList<ArrayList<Object>> rightResults = right.evaluate();
-            for (ArrayList<Object> leftRecord : leftResults) {
-                for (ArrayList<Object> rightRecord : rightResults) {
-                    int leftColumnIndex = ((ColumnNode) left).getColumnIndex();
-                    Object leftValue = leftRecord.get(leftColumnIndex);
+    @Override
+    ArrayList<ArrayList<Object>> indexLookup() {
+        return right instanceof ValueNode && useIndex() ? indexRecords() : null;
+    }
 
-                    int rightColumnIndex = ((ColumnNode) right).getColumnIndex();
-                    Object rightValue = rightRecord.get(rightColumnIndex);
+    /**
+     * Checks if the column has an index that gives the same records as comparing every record.
+     * The value must be of the column's type, an Integer compared to a Double column is left to
+     * the scan. Ranges also work for a mix of Integer and Double, as they compare by value.
+     * @return true if the comparison can be done with the index
+     */
+    private boolean useIndex() {
+        Attribute attribute = ((ColumnNode) left).getAttribute();
+        Object value = ((ValueNode) right).getValue();
+        Table table = ((ColumnNode) left).getTable();
+        if (attribute == null || value == null || table == null || !table.hasIndex(attribute)) {
+            return false;
+        }
+        String type = attribute.getAttributeType().toLowerCase();
+        boolean numeric = type.equals("integer") || type.equals("double");
+        switch (operator) {
+            case "=":
+                return (type.equals("integer") && value instanceof Integer)
+                        || (type.equals("double") && value instanceof Double)
+                        || (type.equals("boolean") && value instanceof Boolean)
+                        || (!numeric && !type.equals("boolean") && value instanceof String);
+            case "<":
+            case "<=":
+            case ">":
+            case ">=":
+                return (numeric && value instanceof Number)
+                        || (!numeric && !type.equals("boolean") && value instanceof String);
+            default:
+                return false;
+        }
+    }
 
-                    switch (operator) {
-                        case ">":
-                            if (RecordHelper.greaterThan(leftValue, rightValue)) {
-                                results.add(leftRecord);
-                            }
-                            break;
-                        case "<":
-                            if (RecordHelper.lessThan(leftValue, rightValue)) {
-                                results.add(leftRecord);
-                            }
-                            break;
-                        case "=":
-                            if (RecordHelper.equals(leftValue, rightValue)) {
-                                results.add(leftRecord);
-                            }
-                            break;
-                        case ">=":
-                            if (RecordHelper.greaterThanEquals(leftValue, rightValue)) {
-                                results.add(leftRecord);
-                            }
-                            break;
-                        case "<=":
-                            if (RecordHelper.lessThanEquals(leftValue, rightValue)) {
-                                results.add(leftRecord);
-                            }
-                            break;
-                        case "!=":
-                            if (RecordHelper.notEquals(leftValue, rightValue)) {
-                                results.add(leftRecord);
-                            }
-                            break;
-                        default:
-                            System.err.println("Invalid operation in 'where' clause: " + operator);
-                            return null;
-                    }
+    /**
+     * Finds the records of the comparison through the index on the column, an equality lookup
+     * for = and a range for the rest, then reads only the pages those records are in.
+     * @return the records matching the comparison, in primary key order; null upon error
+     */
+    private ArrayList<ArrayList<Object>> indexRecords() {
+        ColumnNode column = (ColumnNode) left;
+        Table table = column.getTable();
+        BPlusTree tree = table.getIndex(column.getAttribute());
+        Object value = ((ValueNode) right).getValue();
+        if (tree == null) {
+            return null;
+        }
+        ArrayList<RecordPointer> pointers;
+        if (operator.equals("=")) {
+            pointers = tree.search(value);
+        } else {
+            boolean lessThan = operator.startsWith("<");
+            pointers = tree.searchRange(value, lessThan, operator.endsWith("="));
+            // Comparing a null to a value is true for every one of these, the index keeps nulls
+            // below every key so they are only in the range of < and <=
+            if (pointers != null && !lessThan) {
+                ArrayList<RecordPointer> nulls = tree.search(null);
+                if (nulls == null) {
+                    return null;
                 }
+                pointers.addAll(nulls);
             }
         }
-        return results;
+        if (pointers == null) {
+            System.err.println("Error reading index on " + tree.getColumnName());
+            return null;
+        }
+        // Sorted into the order of the table's pages, so the records come back in primary key
+        // order as a scan would find them and each page is still read once. The storage manager
+        // puts the records of each page in order.
+        ArrayList<Integer> pageList = table.getPageList();
+        HashMap<Integer, Integer> positions = new HashMap<>();
+        for (int i = 0; i < pageList.size(); i++) {
+            positions.put(pageList.get(i), i);
+        }
+        pointers.sort(Comparator.comparingInt((RecordPointer rp) -> positions.getOrDefault(rp.page(), -1)));
+        return ((StorageManager) StorageManager.getStorageManager()).getRecords(table, pointers);
     }
+
     public String toString(){
         return "(" +left.toString() + ") " + operator + " (" + right.toString() + ")";
     }
@@ -3,6 +3,7 @@ package conditionals;
 import storagemanager.RecordHelper;
 
 import java.util.ArrayList;
+import java.util.function.Predicate;
 
 public class ValueNode extends Node{
 
@@ -34,6 +35,12 @@ public class ValueNode extends Node{
         return null;
     }
 
+    @Override
+    public Predicate<ArrayList<Object>> compile() {
+        //not used for value nodes, they are compared by an OperatorNode
+        return null;
+    }
+
     public String toString(){
         return "Value " + value;
     }
@@ -1,29 +1,76 @@
 package indexing;
 
-import common.RecordPointer;
+import storagemanager.RecordHelper;
+import storagemanager.StringCodec;
 
+import java.io.IOException;
 import java.nio.ByteBuffer;
-import java.util.ArrayList;
-import java.util.Collection;
-import java.util.HashMap;
-import java.util.Hashtable;
 
+/**
+ * One node of a BPlusTree, stored in its own index page.
+ *
+ * Nodes point to each other by page index rather than by reference, so any node can be written
+ * out and read back on its own. A leaf entry is a key and a PostingList with record pointers for
+ * that key. A key with more pointers than fit in one entry takes several entries in a row, each
+ * covering a range of pointers. Entries are ordered by key and then by their first pointer, and
+ * inner nodes separate their children by the same (key, pointer) pairs.
+ *
+ * The keys are kept in a KeyArray picked from the type of the indexed column, so Integer and
+ * Double keys are searched without unboxing them.
+ *
+ * Page layout:
+ *   header: magic (2) | leaf (1) | entry count (4) | next leaf (4)
+ *   leaf:   per entry, type tag (1) and key, then the posting list
+ *   inner:  per separator, type tag (1) and key, then its pointer (8); then a child page index
+ *           (4) per child
+ */
 public class BPTreeNode {
 
-    public int numKeys = 1;
-    public Object[] keys;
-    private BPTreeNode[] children;
-    private BPTreeNode parent = null;
-    private BPTreeNode next = null;
-    private boolean isLeaf = true;
-    private int pageIndex;
-
-    public BPTreeNode(int pageIndex, int keySize){
-        // TODO need to write out to hardware and update each time anything is changed.
-        // Function will need to be outside of constructor and called for every set operation
+    static final short MAGIC = 0x4254; // "BT"
+    static final int HEADER_SIZE = 11;
+    static final int NO_PAGE = -1;
+
+    private static final byte NULL_KEY = 0;
+    private static final byte INTEGER_KEY = 1;
+    private static final byte DOUBLE_KEY = 2;
+    private static final byte BOOLEAN_KEY = 3;
+    private static final byte STRING_KEY = 4;
+
+    public int numKeys = 0;
+    private final KeyArray keys;
+    private int[] children;
+    private long[] separators;
+    private PostingList[] postings;
+    private int next = NO_PAGE;
+    private boolean isLeaf;
+    private final int pageIndex;
+    private boolean dirty = true;
+
+    /**
+     * @param pageIndex the index page the node is stored in
+     * @param keySize the number of keys that makes the node split; one more fits until it does
+     * @param isLeaf true for a leaf, false for an inner node
+     */
+    public BPTreeNode(int pageIndex, int keySize, boolean isLeaf){
+        this(pageIndex, keySize, isLeaf, null);
+    }
+
+    /**
+     * @param pageIndex the index page the node is stored in
+     * @param keySize the number of keys that makes the node split; one more fits until it does
+     * @param isLeaf true for a leaf, false for an inner node
+     * @param keyType the attribute type of the keys; null if it is not known
+     */
+    public BPTreeNode(int pageIndex, int keySize, boolean isLeaf, String keyType){
         this.pageIndex = pageIndex;
-        keys = new Object[keySize+1];
-        children = new BPTreeNode[keySize+1];
+        this.isLeaf = isLeaf;
+        keys = KeyArray.forType(keyType, keySize + 1);
+        if(isLeaf){
+            postings = new PostingList[keySize + 1];
+        }else{
+            separators = new long[keySize + 1];
+            children = new int[keySize + 2];
+        }
     }
 
     public boolean isLeaf() {
@@ -34,31 +81,333 @@ public class BPTreeNode {
         return pageIndex;
     }
 
-    public Object[] getKeys() {
-        return keys;
+    public Object getKey(int position) {
+        return keys.get(position);
+    }
+
+    /**
+     * Replaces a separator of an inner node
+     * @param position the index of the separator
+     * @param key the new key
+     * @param pointer the new pointer
+     */
+    public void setSeparator(int position, Object key, long pointer){
+        keys.set(position, key);
+        separators[position] = pointer;
     }
 
-    public BPTreeNode[] getChildren() {
+    public int[] getChildren() {
         return children;
     }
 
-    public BPTreeNode getParent() {
-        return parent;
+    /**
+     * @return the pointer half of every separator of an inner node
+     */
+    public long[] getSeparators() {
+        return separators;
     }
 
-    public void setParent(BPTreeNode parent) {
-        this.parent = parent;
+    public PostingList[] getPostings() {
+        return postings;
     }
 
-    public BPTreeNode getNext() {
+    public int getNext() {
         return next;
     }
 
-    public void setNext(BPTreeNode next){
+    public void setNext(int next){
         this.next = next;
     }
 
-    public void setLeaf(boolean leaf) {
-        this.isLeaf = leaf;
+    public boolean isDirty() {
+        return dirty;
+    }
+
+    public void setDirty(boolean dirty) {
+        this.dirty = dirty;
+    }
+
+    /**
+     * Orders (key, pointer) pairs by key and then by pointer
+     */
+    static int compare(Object key1, long pointer1, Object key2, long pointer2){
+        int compare = RecordHelper.compare(key1, key2);
+        return compare != 0 ? compare : Long.compare(pointer1, pointer2);
+    }
+
+    /**
+     * @param position the index of an entry or separator
+     * @return the pointer that orders it among others with the same key
+     */
+    public long pointerAt(int position){
+        return isLeaf ? postings[position].first() : separators[position];
+    }
+
+    /**
+     * @param searchKey the key half of the pair
+     * @param pointer the pointer half of the pair
+     * @return the number of entries, or separators, at or below the pair. In a leaf the entry
+     *         that would hold the pair is one less; in an inner node it is the child to follow.
+     */
+    public int upperBound(Object searchKey, long pointer){
+        int low = keys.lowerBound(0, numKeys, searchKey);
+        if(low == numKeys || keys.compare(low, searchKey) != 0){
+            return low;
+        }
+        // Only entries with the same key are told apart by their pointers
+        int high = keys.upperBound(low, numKeys, searchKey);
+        while(low < high){
+            int mid = (low + high) >>> 1;
+            if(pointerAt(mid) <= pointer){
+                low = mid + 1;
+            }else{
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * @param searchKey the key to look for
+     * @return the index of the first entry with a key at or above the search key
+     */
+    public int lowerBound(Object searchKey){
+        return keys.lowerBound(0, numKeys, searchKey);
+    }
+
+    /**
+     * @param position the index of an entry or separator
+     * @param key the key to compare against
+     * @return less than, equal to or greater than 0 as the key at the position is below, equal
+     *         to or above the provided key
+     */
+    public int compareKey(int position, Object key){
+        return keys.compare(position, key);
+    }
+
+    public void insertEntry(int position, Object key, PostingList list){
+        keys.insert(position, numKeys, key);
+        System.arraycopy(postings, position, postings, position + 1, numKeys - position);
+        postings[position] = list;
+        numKeys++;
+    }
+
+    public void removeEntry(int position){
+        keys.remove(position, numKeys);
+        System.arraycopy(postings, position + 1, postings, position, numKeys - position - 1);
+        numKeys--;
+        postings[numKeys] = null;
+    }
+
+    /**
+     * Adds a separator and the child to its right
+     * @param position where the separator goes; the child goes at position + 1
+     * @param key the key of the separator
+     * @param pointer the pointer of the separator
+     * @param child the page index of the child right of the separator
+     */
+    public void insertChild(int position, Object key, long pointer, int child){
+        keys.insert(position, numKeys, key);
+        System.arraycopy(separators, position, separators, position + 1, numKeys - position);
+        System.arraycopy(children, position + 1, children, position + 2, numKeys - position);
+        separators[position] = pointer;
+        children[position + 1] = child;
+        numKeys++;
+    }
+
+    /**
+     * Adds a separator and a child in front of every other one
+     * @param key the key of the separator
+     * @param pointer the pointer of the separator
+     * @param child the page index of the child left of the separator
+     */
+    public void insertFirstChild(Object key, long pointer, int child){
+        keys.insert(0, numKeys, key);
+        System.arraycopy(separators, 0, separators, 1, numKeys);
+        System.arraycopy(children, 0, children, 1, numKeys + 1);
+        separators[0] = pointer;
+        children[0] = child;
+        numKeys++;
+    }
+
+    /**
+     * Removes a separator and one of the children next to it
+     * @param keyPosition the index of the separator to remove
+     * @param childPosition the index of the child to remove, keyPosition or keyPosition + 1
+     */
+    public void removeChild(int keyPosition, int childPosition){
+        keys.remove(keyPosition, numKeys);
+        System.arraycopy(separators, keyPosition + 1, separators, keyPosition, numKeys - keyPosition - 1);
+        System.arraycopy(children, childPosition + 1, children, childPosition, numKeys - childPosition);
+        numKeys--;
+    }
+
+    /**
+     * Moves the end of the node into an empty node right of it. A leaf moves the entries from
+     * the position on. An inner node moves the separators after the position and the children
+     * right of them, and drops the separator at the position, which goes up to the parent.
+     * @param from the index of the first entry to move, or of the separator that goes up
+     * @param right the empty node to move into
+     */
+    public void moveTail(int from, BPTreeNode right){
+        if(isLeaf){
+            for(int i = from; i < numKeys; i++){
+                right.insertEntry(right.numKeys, keys.get(i), postings[i]);
+            }
+            while(numKeys > from){
+                removeEntry(numKeys - 1);
+            }
+        }else{
+            right.children[0] = children[from + 1];
+            for(int i = from + 1; i < numKeys; i++){
+                right.insertChild(right.numKeys, keys.get(i), separators[i], children[i + 1]);
+            }
+            while(numKeys > from){
+                removeChild(numKeys - 1, numKeys);
+            }
+        }
+    }
+
+    /**
+     * @param key a key of the tree, may be null
+     * @return the number of bytes the key takes in a node page
+     */
+    static int keySize(Object key){
+        if(key instanceof Integer){
+            return 5;
+        }else if(key instanceof Double){
+            return 9;
+        }else if(key instanceof Boolean){
+            return 2;
+        }else if(key instanceof String){
+            return 3 + StringCodec.UTF16.encodedSize((String) key);
+        }
+        return 1;
+    }
+
+    /**
+     * @param position the index of a leaf entry
+     * @return the number of bytes the entry takes in the leaf
+     */
+    public int entrySize(int position){
+        return keys.byteSize(position) + postings[position].byteSize();
+    }
+
+    /**
+     * @param position the index of a separator
+     * @return the number of bytes the separator and the child right of it take in the node
+     */
+    public int separatorSize(int position){
+        return keys.byteSize(position) + 12;
+    }
+
+    /**
+     * @return the number of bytes the node takes in its page
+     */
+    public int byteSize(){
+        int size = HEADER_SIZE;
+        for(int i = 0; i < numKeys; i++){
+            size += isLeaf ? entrySize(i) : keys.byteSize(i) + 8;
+        }
+        return isLeaf ? size : size + (numKeys + 1) * 4;
+    }
+
+    /**
+     * Encodes the node into the buffer, starting at position 0. On return the buffer is
+     * flipped and ready to be written.
+     * @param out the buffer to encode into
+     */
+    public void write(ByteBuffer out) throws IOException {
+        int size = byteSize();
+        if(size > out.capacity()){
+            throw new IOException("Index node " + pageIndex + " is " + size + " bytes, index pages hold " + out.capacity());
+        }
+        out.clear();
+        out.putShort(MAGIC);
+        out.put((byte) (isLeaf ? 1 : 0));
+        out.putInt(numKeys);
+        out.putInt(next);
+        for(int i = 0; i < numKeys; i++){
+            writeKey(keys.get(i), out);
+            if(isLeaf){
+                postings[i].write(out);
+            }else{
+                out.putLong(separators[i]);
+            }
+        }
+        if(!isLeaf){
+            for(int i = 0; i <= numKeys; i++){
+                out.putInt(children[i]);
+            }
+        }
+        out.flip();
+    }
+
+    private static void writeKey(Object key, ByteBuffer out){
+        if(key instanceof Integer){
+            out.put(INTEGER_KEY);
+            out.putInt((Integer) key);
+        }else if(key instanceof Double){
+            out.put(DOUBLE_KEY);
+            out.putDouble((Double) key);
+        }else if(key instanceof Boolean){
+            out.put(BOOLEAN_KEY);
+            out.put((byte) ((Boolean) key ? 1 : 0));
+        }else if(key instanceof String){
+            out.put(STRING_KEY);
+            StringCodec.UTF16.write((String) key, out);
+        }else{
+            out.put(NULL_KEY);
+        }
+    }
+
+    private static Object readKey(ByteBuffer in){
+        switch(in.get()){
+            case INTEGER_KEY:
+                return in.getInt();
+            case DOUBLE_KEY:
+                return in.getDouble();
+            case BOOLEAN_KEY:
+                return in.get() != 0;
+            case STRING_KEY:
+                return StringCodec.UTF16.read(in);
+            default:
+                return null;
+        }
+    }
+
+    /**
+     * Decodes a node written by write()
+     * @param pageIndex the index page the node was read from
+     * @param keySize the number of keys that makes the node split
+     * @param keyType the attribute type of the keys; null if it is not known
+     * @param in the node bytes, starting at position 0
+     * @return the node
+     */
+    public static BPTreeNode read(int pageIndex, int keySize, String keyType, ByteBuffer in) throws IOException {
+        if(in.getShort() != MAGIC){
+            throw new IOException("Index page " + pageIndex + " does not hold a tree node");
+        }
+        BPTreeNode node = new BPTreeNode(pageIndex, keySize, in.get() != 0, keyType);
+        node.numKeys = in.getInt();
+        node.next = in.getInt();
+        if(node.numKeys > keySize){
+            throw new IOException("Index node " + pageIndex + " has " + node.numKeys + " keys, nodes hold " + keySize);
+        }
+        for(int i = 0; i < node.numKeys; i++){
+            node.keys.set(i, readKey(in));
+            if(node.isLeaf){
+                node.postings[i] = PostingList.read(in);
+            }else{
+                node.separators[i] = in.getLong();
+            }
+        }
+        if(!node.isLeaf){
+            for(int i = 0; i <= node.numKeys; i++){
+                node.children[i] = in.getInt();
+            }
+        }
+        node.dirty = false;
+        return node;
     }
 }
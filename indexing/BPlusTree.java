@@ -1,420 +1,910 @@
 package indexing;
 
 import catalog.ACatalog;
+import common.Attribute;
 import common.RecordPointer;
 import common.Table;
 import storagemanager.RecordHelper;
 
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.HashMap;
-import storagemanager.Page;
-import java.lang.Math;
 
+/**
+ * A B+ tree index over one column of a table, stored on disk with one node per index page.
+ *
+ * The pages of an index are kept in their own segment file, indexes/table.column.idx in the
+ * database directory. Page 0 is the header page and holds where the root is, so the tree is
+ * reopened from disk instead of being rebuilt. Nodes are loaded through a NodeStore as the tree
+ * walks to them, and changed nodes are written back when the page buffer is purged.
+ *
+ * Keys do not have to be unique. Every key has a posting list of all its record pointers, see
+ * BPTreeNode, so one key can point to any number of records.
+ *
+ * The type of the indexed column picks how nodes keep their keys. Integer and Double columns
+ * keep them in primitive arrays, see KeyArray, other types keep them boxed.
+ *
+ * A tree made without a table keeps its nodes in memory.
+ */
 public class BPlusTree implements IBPlusTree{
 
+    private static final int HEADER_MAGIC = 0x42505431; // "BPT1"
+
     private int pageSize;
     private String columnName;
-    private ArrayList<BPTreeNode> tree = new ArrayList<BPTreeNode>();
-    private HashMap<Object, RecordPointer> records = new HashMap<>();
-    private Page page;
-    private int max_keys = 6;
-    private int min_keys = 1;
-    private int split_index = 1;
+    // The attribute type of the column, which picks how nodes store their keys; null if not known
+    private String keyType;
+    private int max_keys;
+    private int min_keys;
+    private int split_index;
     private Table table;
+    private NodeStore nodes;
+    private int frameSize;
+    // The most pointers one leaf entry holds, a key with more takes several entries
+    private int postingLimit;
+
+    private int root = BPTreeNode.NO_PAGE;
+    // The next free index page, page 0 is the header
+    private int index = NodeStore.HEADER_PAGE + 1;
+    // Counts changes to the tree, so open cursors can tell they are out of date
+    private int modCount = 0;
+
+    /**
+     * Makes a new, empty index
+     * @param table the table the index is on; null to keep the tree in memory
+     * @param column the name of the indexed column
+     * @param pageSize the page size of the database
+     */
+    public BPlusTree(Table table, String column, int pageSize){
+        this(table, column, pageSize, maxKeys(pageSize, keyType(table, column)), -1);
+    }
 
-    private BPTreeNode root;
-    private int index;
+    /**
+     * Makes a new, empty index with a fixed node capacity instead of one worked out from the
+     * page size. Used to compare node sizes.
+     * @param table the table the index is on; null to keep the tree in memory
+     * @param column the name of the indexed column
+     * @param pageSize the page size of the database
+     * @param maxKeys the number of keys that makes a node split, at least 3
+     * @param splitIndex the number of keys the left node keeps on a split; -1 for half
+     */
+    public BPlusTree(Table table, String column, int pageSize, int maxKeys, int splitIndex){
+        this(table, column, keyType(table, column), pageSize, maxKeys, splitIndex);
+    }
 
-    public BPlusTree(Table table, String column, int pageSize){
+    /**
+     * Makes a new, empty index kept in memory, for keys of the provided type. Used to compare
+     * node layouts without a database.
+     * @param keyType the attribute type of the keys, such as Integer; null to store them boxed
+     * @param pageSize the page size of the nodes
+     * @param maxKeys the number of keys that makes a node split, at least 3
+     * @param splitIndex the number of keys the left node keeps on a split; -1 for half
+     * @return the tree
+     */
+    public static BPlusTree inMemory(String keyType, int pageSize, int maxKeys, int splitIndex){
+        return new BPlusTree(null, "key", keyType, pageSize, maxKeys, splitIndex);
+    }
+
+    private BPlusTree(Table table, String column, String keyType, int pageSize, int maxKeys, int splitIndex){
         this.columnName = column;
         this.pageSize = pageSize;
         this.table = table;
-//        String attribute_type = table.getAttrByName(columnName).getAttributeType();
-//        double type_bytes = (double) page.getTypeBytes(table.getAttrByName(columnName), attribute_type);
-//        double page_pointer = 4;
-//        double pair_size = type_bytes + page_pointer;
-//        double pairs = pageSize / pair_size;
-//        double n_value = Math.floor(pairs); // n value of the B+ Tree
+        this.keyType = keyType;
+        setCapacity(maxKeys, splitIndex);
+        File file = indexFile();
+        if(file != null){
+            // A new index starts over, whatever an older index on the column left behind
+            deleteFiles(file);
+        }
+        openStore(file);
     }
 
+    /**
+     * Reopens an index saved to disk
+     * @param column the indexed column, qualified with its table name (table.column)
+     */
     public BPlusTree(String column){
-        //TODO load in page from disk if only a column name is specified
+        int dot = column.indexOf('.');
+        this.columnName = column.substring(dot + 1);
+        this.pageSize = ACatalog.getCatalog().getPageSize();
+        if(dot > 0){
+            this.table = (Table) ACatalog.getCatalog().getTable(column.substring(0, dot));
+        }
+        if(table == null){
+            System.err.println("Could not find the table of index: " + column);
+            setCapacity(maxKeys(pageSize, null), -1);
+            openStore(null);
+            return;
+        }
+        keyType = keyType(table, columnName);
+        setCapacity(maxKeys(pageSize, keyType), -1);
+        openStore(indexFile());
+        try {
+            ByteBuffer header = nodes.readHeader();
+            if(header != null){
+                if(header.getInt() != HEADER_MAGIC || header.getInt() != max_keys){
+                    throw new IOException("Unknown index header in " + indexFile());
+                }
+                root = header.getInt();
+                index = header.getInt();
+            }
+        } catch (IOException e) {
+            System.err.println("Error reading index on " + column);
+            e.printStackTrace();
+        }
     }
 
-    public void printTree(BPlusTree tree){
-        if(tree.getRoot() != null){
-            BPTreeNode tmp = tree.getRoot();
-            while(!tmp.isLeaf()){
-                tmp = tmp.getChildren()[0];
-            }
-            while(tmp != null){
-                for(int i = 0; i < tmp.numKeys; i++){
-                    System.out.println(tmp.getKeys()[i] + " " + records.get(tmp.getKeys()[i]));
-                }
-                tmp = tmp.getNext();
+    private File indexFile(){
+        if(table == null){
+            return null;
+        }
+        return indexFile(table, columnName);
+    }
+
+    private static File indexFile(Table table, String columnName){
+        File folder = new File(ACatalog.getCatalog().getDbLocation() + "/indexes");
+        if(!folder.exists()){
+            folder.mkdirs();
+        }
+        return new File(folder, table.getTableName() + "." + columnName + ".idx");
+    }
+
+    private static boolean deleteFiles(File file){
+        File directory = new File(file.getPath() + ".dir");
+        return (!file.exists() || file.delete()) && (!directory.exists() || directory.delete());
+    }
+
+    /**
+     * Closes the index and deletes its files, for when its table or column is dropped
+     * @return true if successful; false otherwise
+     */
+    public boolean delete(){
+        try {
+            nodes.delete();
+            return true;
+        } catch (IOException e) {
+            System.err.println("Error deleting index on " + columnName);
+            e.printStackTrace();
+            return false;
+        }
+    }
+
+    /**
+     * Deletes the files of an index saved to disk that was never opened
+     * @param table the table the index is on
+     * @param column the name of the indexed column
+     * @return true if successful; false otherwise
+     */
+    public static boolean delete(Table table, String column){
+        if(!deleteFiles(indexFile(table, column))){
+            System.err.println("Error deleting index on " + column);
+            return false;
+        }
+        return true;
+    }
+
+    private void openStore(File file){
+        int limit = table == null ? 0 : ACatalog.getCatalog().getPageBufferSize();
+        frameSize = frameSize();
+        // A leaf always has room for at least four entries with full posting lists
+        postingLimit = Math.max(1, ((frameSize - BPTreeNode.HEADER_SIZE) / 4
+                - keyWidth(keyType) - 2) / 8);
+        try {
+            nodes = new NodeStore(file, frameSize, max_keys, keyType, Math.max(limit, 8));
+        } catch (IOException e) {
+            System.err.println("Error opening index file for " + columnName + ", keeping the index in memory");
+            e.printStackTrace();
+            try {
+                nodes = new NodeStore(null, frameSize, max_keys, keyType, 0);
+            } catch (IOException ignored) {
+                // Nothing is opened without a file
             }
         }
     }
-    // TODO need a function to call after each action to write page to disk
 
-    private BPTreeNode getRoot() {
-        return root;
+    private void setCapacity(int maxKeys, int splitIndex){
+        max_keys = Math.max(3, maxKeys);
+        split_index = splitIndex < 1 ? max_keys / 2 : Math.min(splitIndex, max_keys - 2);
+        // Both halves of a split keep at least this many keys, and two nodes below it always fit in one
+        min_keys = Math.max(1, Math.min(split_index, max_keys - split_index - 1));
     }
 
-    @Override
+    /**
+     * Works out how many keys a node takes before it splits. A node is written with up to
+     * max_keys - 1 keys. In a leaf each key has a posting list, 2 bytes plus 8 per pointer; in an
+     * inner node each key has the 8 byte pointer of its separator and a 4 byte child page, plus
+     * one more child. Leaves whose posting lists outgrow the page split before they reach it.
+     * @param pageSize the size of an index page
+     * @param keyType the attribute type of the indexed column; null if it is not known
+     * @return the number of keys that makes a node split, at least 3
+     */
+    public static int maxKeys(int pageSize, String keyType){
+        int entryBytes = keyWidth(keyType) + 12;
+        return Math.max(3, (pageSize - BPTreeNode.HEADER_SIZE - 4) / entryBytes + 1);
+    }
 
-    public boolean insertRecordPointer(RecordPointer rp, Object searchKey) {
-        // to traverse tree and insert based on search key location
-        if(root == null){
-            root = new BPTreeNode(this.index,max_keys);
-            this.index++;
-            root.getKeys()[0] = searchKey;
-            root.numKeys++;
-            records.put(searchKey,rp);
+    private static String keyType(Table table, String column){
+        if(table == null){
+            return null;
+        }
+        Attribute attribute = table.getAttrByName(column);
+        return attribute == null ? null : attribute.getAttributeType();
+    }
+
+    /**
+     * Index pages are the database page size, unless the page is too small for a node of
+     * three of the widest keys the column can have
+     * @return the size of an index page
+     */
+    private int frameSize(){
+        int keyBytes = keyWidth(keyType);
+        return Math.max(pageSize, BPTreeNode.HEADER_SIZE + (max_keys - 1) * (keyBytes + 12) + 4);
+    }
+
+    /**
+     * @param type the attribute type of a key; null if it is not known
+     * @return the most bytes a key of the type takes in a node page
+     */
+    private static int keyWidth(String type){
+        if(type == null){
+            return 9;
+        }
+        type = type.toLowerCase();
+        if(type.equals("integer")){
+            return 5;
+        }else if(type.equals("boolean")){
+            return 2;
+        }else if(type.startsWith("varchar") || type.startsWith("char")){
+            int length = Integer.parseInt(type.substring(type.indexOf('(') + 1, type.indexOf(')')).trim());
+            return 3 + length * 2;
+        }
+        return 9;
+    }
+
+    /**
+     * Writes every changed node and the header page to the index file
+     * @return true if successful; false otherwise
+     */
+    public boolean flush(){
+        ByteBuffer header = ByteBuffer.allocate(16);
+        header.putInt(HEADER_MAGIC);
+        header.putInt(max_keys);
+        header.putInt(root);
+        header.putInt(index);
+        header.flip();
+        try {
+            nodes.flush(header);
             return true;
-        }else {
-            return insert(root, rp, searchKey);
+        } catch (IOException e) {
+            System.err.println("Error writing index on " + columnName + " to disk");
+            e.printStackTrace();
         }
+        return false;
     }
 
-    private boolean insert(BPTreeNode root, RecordPointer rp, Object searchKey){
-            if(root.isLeaf()){
-                boolean hasKey = false;
-                for(Object key : root.getKeys()){
-                    if(RecordHelper.equals(key,searchKey)){
-                        hasKey = true;
-                        break;
-                    }
-                }
-                if(!hasKey){
-                    Object[] keys = root.getKeys();
-                    root.numKeys++;
-                    int insertIndex = root.numKeys-1;
-                    while(insertIndex > 0 && RecordHelper.greaterThan(keys[insertIndex-1],searchKey)){
-                        keys[insertIndex] = keys[insertIndex-1];
-                        insertIndex--;
+    public void printTree(BPlusTree tree){
+        try {
+            if(tree.root != BPTreeNode.NO_PAGE){
+                BPTreeNode tmp = tree.firstLeaf();
+                while(tmp != null){
+                    for(int i = 0; i < tmp.numKeys; i++){
+                        PostingList list = tmp.getPostings()[i];
+                        StringBuilder line = new StringBuilder().append(tmp.getKey(i));
+                        for(int p = 0; p < list.size(); p++){
+                            line.append(' ').append(PostingList.unpack(list.get(p)));
+                        }
+                        System.out.println(line);
                     }
-                    keys[insertIndex] = searchKey;
-                    records.put(searchKey,rp);
-                }
-                insertRepair(root);
-            }else{
-                int findIndex = 0;
-                while(findIndex < root.numKeys && RecordHelper.lessThanEquals(root.getKeys()[findIndex],searchKey)){
-                    findIndex++;
+                    tmp = tmp.getNext() == BPTreeNode.NO_PAGE ? null : tree.nodes.get(tmp.getNext());
                 }
-                return insert(root.getChildren()[findIndex],rp, searchKey);
             }
-            return true;
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
     }
 
-    private void insertRepair(BPTreeNode root) {
-        if (root.numKeys < this.max_keys)
-        {
-            return;
+    public boolean isEmpty() {
+        return root == BPTreeNode.NO_PAGE;
+    }
+
+    public String getColumnName() {
+        return columnName;
+    }
+
+    public int getMaxKeys() {
+        return max_keys;
+    }
+
+    /**
+     * @return the number of nodes from the root to a leaf, which is how many nodes a lookup
+     *         reads; 0 if the tree is empty
+     */
+    public int getHeight() {
+        if(root == BPTreeNode.NO_PAGE){
+            return 0;
         }
-        else if (root.getParent() == null)
-        {
-            this.root = split(root);
-            return;
+        try {
+            int height = 1;
+            BPTreeNode node = nodes.get(root);
+            while(!node.isLeaf()){
+                node = nodes.get(node.getChildren()[0]);
+                height++;
+            }
+            return height;
+        } catch (IOException e) {
+            e.printStackTrace();
+            return -1;
+        } finally {
+            release();
         }
-        else
-        {
-            BPTreeNode newNode  = split(root);
-            insertRepair(newNode);
+    }
+
+    /**
+     * Finds the lowest key that is not null. Nulls sort first, so this is the first key of the
+     * first leaf past them.
+     * @return the key; null if the tree is empty, holds only nulls or could not be read
+     */
+    public Object firstKey(){
+        if(root == BPTreeNode.NO_PAGE){
+            return null;
+        }
+        try {
+            for(BPTreeNode leaf = firstLeaf(); leaf != null; leaf = nextLeaf(leaf)){
+                for(int position = 0; position < leaf.numKeys; position++){
+                    if(leaf.getKey(position) != null){
+                        return leaf.getKey(position);
+                    }
+                }
+            }
+            return null;
+        } catch (IOException e) {
+            System.err.println("Error reading index on " + columnName);
+            e.printStackTrace();
+            return null;
+        } finally {
+            release();
         }
     }
 
-    private BPTreeNode split(BPTreeNode tree) {
-        // TODO add something for splitting files on hardware
-        BPTreeNode rightNode = new BPTreeNode(index++,max_keys);
-        Object rising = tree.getKeys()[split_index];
-        int parentIndex;
-        if(tree.getParent() != null){
-            BPTreeNode currentParent = tree.getParent();
-            for(parentIndex = 0; parentIndex < currentParent.numKeys + 1 && currentParent.getChildren()[parentIndex] != tree; parentIndex++);
-            if(parentIndex == currentParent.numKeys + 1){
-                System.err.println("Error could not find child");
-                return null;
+    /**
+     * Finds the highest key by following the last child of each node down to the last leaf
+     * @return the key; null if the tree is empty, holds only nulls or could not be read
+     */
+    public Object lastKey(){
+        if(root == BPTreeNode.NO_PAGE){
+            return null;
+        }
+        try {
+            BPTreeNode node = nodes.get(root);
+            while(!node.isLeaf()){
+                node = nodes.get(node.getChildren()[node.numKeys]);
             }
-            for(int i = currentParent.numKeys; i > parentIndex; i--){
-                currentParent.getChildren()[i+1] = currentParent.getChildren()[i];
-                currentParent.getKeys()[i] = currentParent.getKeys()[i-1];
+            if(node.numKeys > 0){
+                return node.getKey(node.numKeys - 1);
             }
-            currentParent.numKeys++;
-            currentParent.getKeys()[parentIndex] = rising;
-            currentParent.getChildren()[parentIndex + 1] =  rightNode;
-            rightNode.setParent(currentParent);
+            // A leaf can be left empty when its siblings are too full to refill it from
+            Object last = null;
+            for(BPTreeNode leaf = firstLeaf(); leaf != null; leaf = nextLeaf(leaf)){
+                if(leaf.numKeys > 0){
+                    last = leaf.getKey(leaf.numKeys - 1);
+                }
+            }
+            return last;
+        } catch (IOException e) {
+            System.err.println("Error reading index on " + columnName);
+            e.printStackTrace();
+            return null;
+        } finally {
+            release();
         }
+    }
 
-        int rightSplit;
+    private BPTreeNode newNode(boolean isLeaf){
+        BPTreeNode node = new BPTreeNode(index++, max_keys, isLeaf, keyType);
+        nodes.put(node);
+        return node;
+    }
 
-        if(tree.isLeaf()){
-            rightSplit = split_index;
-            rightNode.setNext(tree.getNext());
-            tree.setNext(rightNode);
-        }else{
-            rightSplit = split_index + 1;
-        }
-        rightNode.numKeys = tree.numKeys - rightSplit;
-        for(int i = rightSplit; i < tree.numKeys + 1; i ++){
-            rightNode.getChildren()[i - rightSplit] = tree.getChildren()[i];
-            if(tree.getChildren()[i] != null){
-                rightNode.setLeaf(false);
-                tree.getChildren()[i].setParent(rightNode);
-            }
-            tree.getChildren()[i] = null;
+    private BPTreeNode firstLeaf() throws IOException {
+        BPTreeNode node = nodes.get(root);
+        while(!node.isLeaf()){
+            node = nodes.get(node.getChildren()[0]);
         }
-        for(int i = rightSplit; i < tree.numKeys; i++){
-            rightNode.getKeys()[i-rightSplit] = tree.getKeys()[i];
+        return node;
+    }
+
+    private BPTreeNode nextLeaf(BPTreeNode leaf) throws IOException {
+        return leaf.getNext() == BPTreeNode.NO_PAGE ? null : nodes.get(leaf.getNext());
+    }
+
+    int getModCount() {
+        return modCount;
+    }
+
+    /**
+     * Finds the leaf a cursor starts in
+     * @param lower the lower bound of the cursor; null to start at the first leaf
+     * @return the leaf; null if the tree is empty
+     */
+    BPTreeNode startLeaf(Object lower) throws IOException {
+        if(root == BPTreeNode.NO_PAGE){
+            return null;
         }
-        BPTreeNode leftNode = tree;
-        leftNode.numKeys = split_index;
-        if(tree.getParent() != null){
-            return tree.getParent();
-        }else{
-            this.root = new BPTreeNode(index++,max_keys);
-            this.root.getKeys()[0] = rising;
-            this.root.getChildren()[0] = leftNode;
-            this.root.getChildren()[1] = rightNode;
-            leftNode.setParent(this.root);
-            rightNode.setParent(this.root);
-            this.root.setLeaf(false);
-            return this.root;
+        try {
+            return lower == null ? firstLeaf() : findLeaf(lower, Long.MIN_VALUE, null, null);
+        } finally {
+            release();
         }
     }
 
-    @Override
-    public boolean removeRecordPointer(RecordPointer rp, Object searchKey) {
-        return deleteElement(this.root,searchKey);
+    /**
+     * Steps a cursor on to the next leaf
+     * @param leaf the leaf the cursor is done with
+     * @return the leaf after it; null after the last leaf
+     */
+    BPTreeNode leafAfter(BPTreeNode leaf) throws IOException {
+        try {
+            return nextLeaf(leaf);
+        } finally {
+            release();
+        }
     }
 
-    private boolean deleteElement(BPTreeNode root, Object searchKey) {
-        if(root != null){
-            int i;
-            for(i = 0; i < root.numKeys && RecordHelper.lessThan(root.keys[i],searchKey); i++);
-            if(i == root.numKeys){
-                if(!root.isLeaf()){
-                    return deleteElement(root.getChildren()[root.numKeys],searchKey);
-                }
-            }else if(!root.isLeaf() && RecordHelper.equals(root.keys[i], searchKey)){
-                return deleteElement(root.getChildren()[i+1],searchKey);
-            }else if(!root.isLeaf()){
-                return deleteElement(root.getChildren()[i],searchKey);
-            }else if(root.isLeaf() && RecordHelper.equals(root.keys[i], searchKey)){
-                for(int j = i; j < root.numKeys-1;j++){
-                    root.keys[j] = root.keys[j+1];
-                }
-                root.numKeys--;
+    /**
+     * Opens a cursor over the pointers of every key between two bounds
+     * @param lower the lowest key; null for no lower bound
+     * @param lowerInclusive true to include the lower bound itself
+     * @param upper the highest key; null for no upper bound
+     * @param upperInclusive true to include the upper bound itself
+     * @return the cursor, which returns the pointers in key order
+     */
+    public IndexCursor cursor(Object lower, boolean lowerInclusive, Object upper, boolean upperInclusive){
+        return new IndexCursor(this, lower, lowerInclusive, upper, upperInclusive);
+    }
 
+    /**
+     * Walks from the root to the leaf that holds the (key, pointer) pair
+     * @param searchKey the key to look for
+     * @param pointer the pointer to look for; Long.MIN_VALUE for the leaf the key starts in
+     * @param path filled with the inner nodes passed on the way; may be null
+     * @param childIndexes filled with the child taken at each of them; may be null
+     * @return the leaf
+     */
+    private BPTreeNode findLeaf(Object searchKey, long pointer, ArrayList<BPTreeNode> path, ArrayList<Integer> childIndexes) throws IOException {
+        BPTreeNode node = nodes.get(root);
+        while(!node.isLeaf()){
+            int child = node.upperBound(searchKey, pointer);
+            if(path != null){
+                path.add(node);
+                childIndexes.add(child);
             }
-            return repairAfterDelete(root);
+            node = nodes.get(node.getChildren()[child]);
         }
-        return false;
+        return node;
     }
 
-    public BPTreeNode mergeRight(BPTreeNode tree){
-        BPTreeNode parentNode = tree.getParent();
-        int parentIndex = 0;
-        for(parentIndex= 0; parentNode.getChildren()[parentIndex] != tree; parentIndex++);
-        BPTreeNode rightSib = parentNode.getChildren()[parentIndex + 1];
-        int fromParentIndex = tree.numKeys;
-        for(int i = 0; i < rightSib.numKeys;i++){
-            int insertIndex = tree.numKeys + 1 + i;
-            if(tree.isLeaf()){
-                insertIndex -= 1;
+    @Override
+    public boolean insertRecordPointer(RecordPointer rp, Object searchKey) {
+        long pointer = PostingList.pack(rp);
+        modCount++;
+        try {
+            if(root == BPTreeNode.NO_PAGE){
+                BPTreeNode leaf = newNode(true);
+                PostingList list = new PostingList();
+                list.add(pointer);
+                leaf.insertEntry(0, searchKey, list);
+                root = leaf.getPageIndex();
+                return true;
             }
-            tree.keys[insertIndex] = rightSib.keys[i];
-        }
-        if(!tree.isLeaf()){
-                for(int i = 0; i <= rightSib.numKeys; i++){
-                    tree.getChildren()[tree.numKeys+1+i] = rightSib.getChildren()[i];
-                    tree.getChildren()[tree.numKeys+1+i].setParent(tree);
+            ArrayList<BPTreeNode> path = new ArrayList<>();
+            ArrayList<Integer> childIndexes = new ArrayList<>();
+            BPTreeNode leaf = findLeaf(searchKey, pointer, path, childIndexes);
+            int position = leaf.upperBound(searchKey, pointer) - 1;
+            if(position < 0 || leaf.compareKey(position, searchKey) != 0){
+                // Below every list of the key in this leaf, the first one takes the pointer
+                if(position + 1 < leaf.numKeys && leaf.compareKey(position + 1, searchKey) == 0){
+                    position++;
+                }else{
+                    PostingList list = new PostingList();
+                    list.add(pointer);
+                    leaf.insertEntry(position + 1, searchKey, list);
+                    nodes.put(leaf);
+                    insertRepair(leaf, path, childIndexes);
+                    return true;
                 }
-                tree.numKeys = tree.numKeys + rightSib.numKeys + 1;
-            }else{
-                tree.numKeys = tree.numKeys + rightSib.numKeys;
-                tree.setNext(rightSib.getNext());
             }
-
-        for(int i = parentIndex + 1; i < parentNode.numKeys;i++){
-            parentNode.getChildren()[i] = parentNode.getChildren()[i+1];
-            parentNode.getKeys()[i-1] = parentNode.getKeys()[i];
+            PostingList list = leaf.getPostings()[position];
+            if(!list.add(pointer)){
+                return true;
+            }
+            if(list.size() > postingLimit){
+                leaf.insertEntry(position + 1, searchKey, list.split(list.size() / 2));
+            }
+            nodes.put(leaf);
+            insertRepair(leaf, path, childIndexes);
+            return true;
+        } catch (IOException e) {
+            System.err.println("Error inserting into index on " + columnName);
+            e.printStackTrace();
+            return false;
+        } finally {
+            release();
         }
-        parentNode.numKeys--;
-        return tree;
     }
 
-    private BPTreeNode stealFromRight(BPTreeNode tree, int parentIndex){
-        BPTreeNode parentNode = tree.getParent();
-        BPTreeNode rightSib = parentNode.getChildren()[parentIndex];
-        tree.numKeys++;
-        if(tree.isLeaf()){
-            tree.keys[tree.numKeys-1] = rightSib.keys[0];
-            parentNode.keys[parentIndex] = rightSib.keys[1];
-        }else{
-            tree.keys[tree.numKeys-1] = parentNode.keys[parentIndex];
-            parentNode.keys[parentIndex] = rightSib.keys[0];
-        }
-        if(!tree.isLeaf()){
-            tree.getChildren()[tree.numKeys] = rightSib.getChildren()[0];
-            tree.getChildren()[tree.numKeys].setParent(tree);
-            for(int i = 1; i < rightSib.numKeys + 1; i++){
-                rightSib.getChildren()[i-1] = rightSib.getChildren()[i];
+    /**
+     * Splits the node if it is full, and then every parent the split fills up
+     */
+    private void insertRepair(BPTreeNode node, ArrayList<BPTreeNode> path, ArrayList<Integer> childIndexes) {
+        while(node.numKeys >= max_keys || node.byteSize() > frameSize){
+            int splitAt = node.numKeys >= max_keys ? split_index : byteMidpoint(node);
+            BPTreeNode rightNode = newNode(node.isLeaf());
+            Object risingKey;
+            long risingPointer;
+            if(node.isLeaf()){
+                // Leaves keep every entry, the right leaf starts with the rising pair
+                node.moveTail(splitAt, rightNode);
+                rightNode.setNext(node.getNext());
+                node.setNext(rightNode.getPageIndex());
+                risingKey = rightNode.getKey(0);
+                risingPointer = rightNode.pointerAt(0);
+            }else{
+                // The rising separator moves up and stays in neither half
+                risingKey = node.getKey(splitAt);
+                risingPointer = node.getSeparators()[splitAt];
+                node.moveTail(splitAt, rightNode);
+            }
+            nodes.put(node);
+
+            if(path.isEmpty()){
+                BPTreeNode newRoot = newNode(false);
+                newRoot.getChildren()[0] = node.getPageIndex();
+                newRoot.insertChild(0, risingKey, risingPointer, rightNode.getPageIndex());
+                root = newRoot.getPageIndex();
+                return;
             }
+            BPTreeNode parent = path.remove(path.size() - 1);
+            int child = childIndexes.remove(childIndexes.size() - 1);
+            parent.insertChild(child, risingKey, risingPointer, rightNode.getPageIndex());
+            nodes.put(parent);
+            node = parent;
         }
-        for(int i = 1; i < rightSib.numKeys; i ++){
-            rightSib.keys[i-1] = rightSib.keys[i];
+    }
+
+    /**
+     * @param node a node that outgrew its page
+     * @return where to split the node so both halves take about the same number of bytes
+     */
+    private static int byteMidpoint(BPTreeNode node){
+        int half = (node.byteSize() - BPTreeNode.HEADER_SIZE) / 2;
+        int bytes = 0;
+        int position = 0;
+        while(position < node.numKeys - 1 && bytes < half){
+            bytes += node.isLeaf() ? node.entrySize(position) : node.separatorSize(position);
+            position++;
         }
-        rightSib.numKeys--;
-        return tree;
+        // An inner node also needs a separator to move up and at least one to keep on the right
+        return Math.max(1, Math.min(position, node.isLeaf() ? node.numKeys - 1 : node.numKeys - 2));
     }
 
-    private BPTreeNode stealFromLeft(BPTreeNode tree, int parentIndex){
-        BPTreeNode parentNode = tree.getParent();
-        tree.numKeys++;
-        for(int i = tree.numKeys - 1; i > 0; i --){
-            tree.keys[i] = tree.keys[i-1];
+    /**
+     * Builds the tree bottom up from keys that are already sorted, instead of inserting them one
+     * at a time. Leaves are filled up to the fill factor and linked left to right, then each level
+     * of inner nodes is built over the level below it. The tree must be empty.
+     * @param keys the search keys in ascending order
+     * @param pointers the record pointer of each key; ascending among pointers of the same key
+     * @param fillFactor how full to make each node, between 0 and 1
+     * @return true if successful; false otherwise
+     */
+    public boolean bulkLoad(ArrayList<Object> keys, ArrayList<RecordPointer> pointers, double fillFactor) {
+        if (root != BPTreeNode.NO_PAGE) {
+            System.err.println("Can only bulk load an empty tree");
+            return false;
         }
-        BPTreeNode leftSib = parentNode.getChildren()[parentIndex-1];
-        if(tree.isLeaf()){
-            tree.keys[0] = leftSib.keys[leftSib.numKeys-1];
-            parentNode.keys[parentIndex-1] = parentNode.keys[leftSib.numKeys-1];
-        }else{
-            tree.keys[0] = parentNode.keys[leftSib.numKeys-1];
-            parentNode.keys[parentIndex-1] = leftSib.keys[leftSib.numKeys-1];
+        if (keys.isEmpty()) {
+            return true;
         }
-        if(!tree.isLeaf()){
-            for(int i = tree.numKeys; i > 0; i--){
-                tree.getChildren()[i] = tree.getChildren()[i-1];
+        // Group the pointers of each key into posting lists first
+        ArrayList<Object> entryKeys = new ArrayList<>();
+        ArrayList<PostingList> entryLists = new ArrayList<>();
+        int listLimit = Math.max(1, (int) (postingLimit * fillFactor));
+        long previous = 0;
+        for (int i = 0; i < keys.size(); i++) {
+            long pointer = PostingList.pack(pointers.get(i));
+            boolean sameKey = i > 0 && RecordHelper.compare(keys.get(i - 1), keys.get(i)) == 0;
+            if (i > 0 && BPTreeNode.compare(keys.get(i - 1), previous, keys.get(i), pointer) >= 0) {
+                System.err.println("Bulk loaded keys must be sorted: " + keys.get(i - 1) + " before " + keys.get(i));
+                return false;
             }
-            tree.getChildren()[0] = leftSib.getChildren()[leftSib.numKeys];
-            leftSib.getChildren()[leftSib.numKeys] = null;
-            tree.getChildren()[0].setParent(tree);
+            previous = pointer;
+            if (!sameKey || entryLists.get(entryLists.size() - 1).size() >= listLimit) {
+                entryKeys.add(keys.get(i));
+                entryLists.add(new PostingList());
+            }
+            entryLists.get(entryLists.size() - 1).add(pointer);
         }
-        leftSib.numKeys--;
-        return tree;
-    }
 
-
-    private boolean repairAfterDelete(BPTreeNode tree) {
-        if(tree.numKeys < this.min_keys){
-            if(tree.getParent() == null){
-                if(tree.numKeys == 0){
-                    this.root = tree.getChildren()[0];
-                    if(this.root != null){
-                        this.root.setParent(null);
+        // Nodes split once they reach max_keys, so a full node holds max_keys - 1
+        int leafKeys = Math.max(1, (int) ((max_keys - 1) * fillFactor));
+        int leafBytes = Math.max(frameSize / 2, (int) (frameSize * fillFactor));
+        int innerChildren = Math.max(3, (int) ((max_keys - 1) * fillFactor) + 1);
+
+        modCount++;
+        try {
+            // Only page indexes and low pairs are kept, so the nodes can be written out as they fill
+            ArrayList<Integer> level = new ArrayList<>();
+            // The smallest (key, pointer) pair under each node of the level
+            ArrayList<Object> lowKeys = new ArrayList<>();
+            ArrayList<Long> lowPointers = new ArrayList<>();
+            // Spread the entries evenly so the last leaf is not left nearly empty
+            int leafCount = (entryKeys.size() + leafKeys - 1) / leafKeys;
+            int perLeaf = (entryKeys.size() + leafCount - 1) / leafCount;
+            int start = 0;
+            while (start < entryKeys.size()) {
+                BPTreeNode leaf = newNode(true);
+                int bytes = BPTreeNode.HEADER_SIZE;
+                int end = start;
+                while (end < entryKeys.size() && end - start < perLeaf) {
+                    int entryBytes = BPTreeNode.keySize(entryKeys.get(end)) + entryLists.get(end).byteSize();
+                    if (end > start && bytes + entryBytes > leafBytes) {
+                        break;
                     }
+                    leaf.insertEntry(end - start, entryKeys.get(end), entryLists.get(end));
+                    bytes += entryBytes;
+                    end++;
                 }
-            }else{
-                BPTreeNode parentNode = tree.getParent();
-                int parentIndex;
-                for(parentIndex = 0; parentNode.getChildren()[parentIndex] != tree; parentIndex++);
-
-                if(parentIndex > 0 && parentNode.getChildren()[parentIndex-1].numKeys + tree.numKeys <= this.max_keys){
-                    BPTreeNode nextNode = mergeRight(parentNode.getChildren()[parentIndex-1]);
-                    return repairAfterDelete(nextNode.getParent());
-                }else if(parentIndex < parentNode.numKeys && parentNode.getChildren()[parentIndex+1].numKeys + tree.numKeys <= this.max_keys){
-                    BPTreeNode nextNode = mergeRight(tree);
-                    return repairAfterDelete(nextNode.getParent());
-                }else if(parentIndex > 0 && parentNode.getChildren()[parentIndex-1].numKeys > this.min_keys){
-                    stealFromLeft(tree,parentIndex);
-                }else if(parentIndex < parentNode.numKeys && parentNode.getChildren()[parentIndex+1].numKeys > this.min_keys){
-                    stealFromRight(tree,parentIndex);
-                }else if(parentIndex == 0){
-                    BPTreeNode nextNode = this.mergeRight(tree);
-                    return repairAfterDelete(nextNode.getParent());
-                }else{
-                    BPTreeNode nextNode = this.mergeRight(parentNode.getChildren()[parentIndex-1]);
-                    return repairAfterDelete(nextNode.getParent());
+                // Leaves get consecutive pages, so the next one is known before it is made
+                if (end < entryKeys.size()) {
+                    leaf.setNext(leaf.getPageIndex() + 1);
                 }
+                level.add(leaf.getPageIndex());
+                lowKeys.add(entryKeys.get(start));
+                lowPointers.add(entryLists.get(start).first());
+                start = end;
+                nodes.release();
             }
+
+            while (level.size() > 1) {
+                // Spread the children evenly so no inner node is left with a single child
+                int groups = (level.size() + innerChildren - 1) / innerChildren;
+                ArrayList<Integer> parents = new ArrayList<>();
+                ArrayList<Object> parentLowKeys = new ArrayList<>();
+                ArrayList<Long> parentLowPointers = new ArrayList<>();
+                start = 0;
+                for (int g = 0; g < groups; g++) {
+                    int end = start + level.size() / groups + (g < level.size() % groups ? 1 : 0);
+                    BPTreeNode parent = newNode(false);
+                    parent.getChildren()[0] = level.get(start);
+                    for (int i = start + 1; i < end; i++) {
+                        parent.insertChild(parent.numKeys, lowKeys.get(i), lowPointers.get(i), level.get(i));
+                    }
+                    parents.add(parent.getPageIndex());
+                    parentLowKeys.add(lowKeys.get(start));
+                    parentLowPointers.add(lowPointers.get(start));
+                    start = end;
+                    nodes.release();
+                }
+                level = parents;
+                lowKeys = parentLowKeys;
+                lowPointers = parentLowPointers;
+            }
+            root = level.get(0);
+            return true;
+        } catch (IOException e) {
+            System.err.println("Error bulk loading index on " + columnName);
+            e.printStackTrace();
+            return false;
         }
-        return true;
     }
 
     @Override
-    public ArrayList<RecordPointer> search(Object searchKey) {
-        return searchForKey(this.root,searchKey);
+    public boolean removeRecordPointer(RecordPointer rp, Object searchKey) {
+        if(root == BPTreeNode.NO_PAGE){
+            return false;
+        }
+        long pointer = PostingList.pack(rp);
+        modCount++;
+        try {
+            ArrayList<BPTreeNode> path = new ArrayList<>();
+            ArrayList<Integer> childIndexes = new ArrayList<>();
+            BPTreeNode leaf = findLeaf(searchKey, pointer, path, childIndexes);
+            int position = leaf.upperBound(searchKey, pointer) - 1;
+            if(position < 0 || leaf.compareKey(position, searchKey) != 0
+                    || !leaf.getPostings()[position].remove(pointer)){
+                return false;
+            }
+            if(leaf.getPostings()[position].size() == 0){
+                leaf.removeEntry(position);
+            }
+            nodes.put(leaf);
+            repairAfterDelete(leaf, path, childIndexes);
+            return true;
+        } catch (IOException e) {
+            System.err.println("Error deleting from index on " + columnName);
+            e.printStackTrace();
+            return false;
+        } finally {
+            release();
+        }
     }
 
-    private ArrayList<RecordPointer> searchForKey(BPTreeNode tree, Object searchKey){
-        ArrayList<RecordPointer> pointers = new ArrayList<>();
-        if(tree != null){
-            int i;
-            for(i = 0; (i < tree.numKeys) && RecordHelper.lessThan(tree.keys[i],searchKey);i++);
-            if(i == tree.numKeys){
-                if(!tree.isLeaf()){
-                    return searchForKey(tree.getChildren()[tree.numKeys], searchKey);
-                }else{
-                    return null;
-                }
-            }else if(RecordHelper.greaterThan(tree.keys[i],searchKey)){
-                if(!tree.isLeaf()){
-                    return searchForKey(tree.getChildren()[i],searchKey);
-                }else{
-                    return null;
+    /**
+     * Refills a node that dropped below the minimum number of keys, from a sibling if one can
+     * spare a key or else by merging it into a sibling, then repairs the parent the same way.
+     * A node whose siblings hold too many bytes to do either is left as it is.
+     */
+    private void repairAfterDelete(BPTreeNode node, ArrayList<BPTreeNode> path, ArrayList<Integer> childIndexes) throws IOException {
+        while(true){
+            if(path.isEmpty()){
+                // The root may hold any number of keys, it only goes away once it is empty
+                if(node.numKeys == 0){
+                    root = node.isLeaf() ? BPTreeNode.NO_PAGE : node.getChildren()[0];
+                    nodes.free(node);
                 }
+                return;
+            }
+            if(node.numKeys >= min_keys){
+                return;
+            }
+            BPTreeNode parent = path.remove(path.size() - 1);
+            int child = childIndexes.remove(childIndexes.size() - 1);
+            BPTreeNode leftSib = child > 0 ? nodes.get(parent.getChildren()[child - 1]) : null;
+            BPTreeNode rightSib = child < parent.numKeys ? nodes.get(parent.getChildren()[child + 1]) : null;
+            if(leftSib != null && leftSib.numKeys > min_keys
+                    && canTake(node, leftSib, leftSib.numKeys - 1, parent, child - 1)){
+                stealFromLeft(node, leftSib, parent, child);
+                return;
+            }
+            if(rightSib != null && rightSib.numKeys > min_keys && canTake(node, rightSib, 0, parent, child)){
+                stealFromRight(node, rightSib, parent, child);
+                return;
+            }
+            if(leftSib != null && canMerge(leftSib, node, parent, child - 1)){
+                mergeRight(leftSib, node, parent, child - 1);
+            }else if(rightSib != null && canMerge(node, rightSib, parent, child)){
+                mergeRight(node, rightSib, parent, child);
             }else{
-                if(!tree.isLeaf()){
-                    return searchForKey(tree.getChildren()[i+1],searchKey);
-                }else{
-                    pointers.add(records.get(searchKey));
-                    return pointers;
-                }
+                return;
             }
+            node = parent;
+        }
+    }
+
+    /**
+     * @return true if the node has room for the entry a sibling would give it
+     */
+    private boolean canTake(BPTreeNode node, BPTreeNode sibling, int position, BPTreeNode parent, int separator){
+        int bytes = node.isLeaf() ? sibling.entrySize(position) : parent.separatorSize(separator);
+        return node.byteSize() + bytes <= frameSize;
+    }
+
+    /**
+     * @return true if both nodes fit in one
+     */
+    private boolean canMerge(BPTreeNode leftNode, BPTreeNode rightNode, BPTreeNode parent, int leftIndex){
+        int bytes = leftNode.byteSize() + rightNode.byteSize() - BPTreeNode.HEADER_SIZE;
+        int count = leftNode.numKeys + rightNode.numKeys;
+        if(!leftNode.isLeaf()){
+            // The separator comes down from the parent, the children of both are counted already
+            bytes += parent.separatorSize(leftIndex) - 4;
+            count++;
         }
-        return null;
+        return count < max_keys && bytes <= frameSize;
     }
 
+    private void stealFromLeft(BPTreeNode node, BPTreeNode leftSib, BPTreeNode parent, int child){
+        int last = leftSib.numKeys - 1;
+        if(node.isLeaf()){
+            node.insertEntry(0, leftSib.getKey(last), leftSib.getPostings()[last]);
+            leftSib.removeEntry(last);
+            parent.setSeparator(child - 1, node.getKey(0), node.pointerAt(0));
+        }else{
+            node.insertFirstChild(parent.getKey(child - 1), parent.getSeparators()[child - 1],
+                    leftSib.getChildren()[last + 1]);
+            parent.setSeparator(child - 1, leftSib.getKey(last), leftSib.getSeparators()[last]);
+            leftSib.removeChild(last, last + 1);
+        }
+        nodes.put(node);
+        nodes.put(leftSib);
+        nodes.put(parent);
+    }
+
+    private void stealFromRight(BPTreeNode node, BPTreeNode rightSib, BPTreeNode parent, int child){
+        if(node.isLeaf()){
+            node.insertEntry(node.numKeys, rightSib.getKey(0), rightSib.getPostings()[0]);
+            rightSib.removeEntry(0);
+            parent.setSeparator(child, rightSib.getKey(0), rightSib.pointerAt(0));
+        }else{
+            node.insertChild(node.numKeys, parent.getKey(child), parent.getSeparators()[child],
+                    rightSib.getChildren()[0]);
+            parent.setSeparator(child, rightSib.getKey(0), rightSib.getSeparators()[0]);
+            rightSib.removeChild(0, 0);
+        }
+        nodes.put(node);
+        nodes.put(rightSib);
+        nodes.put(parent);
+    }
+
+    /**
+     * Moves everything in a node into its left sibling and drops the node
+     * @param leftNode the node that is kept
+     * @param rightNode the node right of it, which is dropped
+     * @param parent the parent of both
+     * @param leftIndex the child index of leftNode in the parent
+     */
+    private void mergeRight(BPTreeNode leftNode, BPTreeNode rightNode, BPTreeNode parent, int leftIndex){
+        if(leftNode.isLeaf()){
+            for(int i = 0; i < rightNode.numKeys; i++){
+                leftNode.insertEntry(leftNode.numKeys, rightNode.getKey(i), rightNode.getPostings()[i]);
+            }
+            leftNode.setNext(rightNode.getNext());
+        }else{
+            leftNode.insertChild(leftNode.numKeys, parent.getKey(leftIndex), parent.getSeparators()[leftIndex],
+                    rightNode.getChildren()[0]);
+            for(int i = 0; i < rightNode.numKeys; i++){
+                leftNode.insertChild(leftNode.numKeys, rightNode.getKey(i), rightNode.getSeparators()[i],
+                        rightNode.getChildren()[i + 1]);
+            }
+        }
+        parent.removeChild(leftIndex, leftIndex + 1);
+        nodes.free(rightNode);
+        nodes.put(leftNode);
+        nodes.put(parent);
+    }
+
+    /**
+     * Finds every record pointer of the search key. A key's posting lists are kept in page
+     * order, so the pointers come back in page order.
+     */
+    @Override
+    public ArrayList<RecordPointer> search(Object searchKey) {
+        ArrayList<RecordPointer> pointers = new ArrayList<>();
+        // The lists of one key can run on into the next leaf, the cursor follows them there
+        IndexCursor cursor = new IndexCursor(this, searchKey, true, searchKey, true);
+        // A null bound leaves the range open, but nulls sort first so they are the start of the tree
+        while(cursor.hasNext() && (searchKey != null || cursor.getKey() == null)){
+            pointers.add(cursor.next());
+        }
+        return cursor.failed() ? null : pointers;
+    }
+
+    /**
+     * Finds every record pointer above or below the search key. The posting lists of all the
+     * keys in the range are merged into page order, so each page only has to be read once.
+     */
     @Override
     public ArrayList<RecordPointer> searchRange(Object searchKey, boolean lessThan, boolean equalTo) {
-        return searchForRange(this.root, searchKey, lessThan, equalTo, new ArrayList<RecordPointer>());
-    }
-
-    private ArrayList<RecordPointer> searchForRange(BPTreeNode tree, Object searchKey, boolean lessThan, boolean equalsTo, ArrayList<RecordPointer> pointers) {
-        if (tree != null) {
-            int i;
-            if (lessThan && equalsTo) {
-                for (i = 0; (i < tree.numKeys) && RecordHelper.lessThanEquals(tree.keys[i], searchKey); i++) ;
-            } else if (lessThan) {
-                for (i = 0; (i < tree.numKeys) && RecordHelper.lessThan(tree.keys[i], searchKey); i++) ;
-            } else if (equalsTo) {
-                for (i = tree.numKeys; (i > 0) && RecordHelper.greaterThan(tree.keys[i], searchKey); i++) ;
-            } else {
-                for (i = tree.numKeys; (i > 0) && RecordHelper.greaterThanEquals(tree.keys[i], searchKey); i++) ;
+        IndexCursor cursor = lessThan ? new IndexCursor(this, null, true, searchKey, equalTo)
+                : new IndexCursor(this, searchKey, equalTo, null, true);
+        long[] merged = new long[16];
+        int count = 0;
+        while(cursor.hasNext()){
+            if(count == merged.length){
+                merged = Arrays.copyOf(merged, count * 2);
             }
+            merged[count++] = cursor.nextPacked();
+        }
+        if(cursor.failed()){
+            return null;
+        }
+        // The cursor returns each key's list sorted, sorting the packed pointers merges them
+        Arrays.sort(merged, 0, count);
+        ArrayList<RecordPointer> pointers = new ArrayList<>(count);
+        for(int i = 0; i < count; i++){
+            pointers.add(PostingList.unpack(merged[i]));
+        }
+        return pointers;
+    }
 
-            if (i == tree.numKeys) {
-                if (!tree.isLeaf()) {
-                    return searchForRange(tree.getChildren()[tree.numKeys], searchKey, lessThan, equalsTo, pointers);
-                } else {
-                    if (equalsTo && RecordHelper.equals(tree.keys[i], searchKey)) {
-                        pointers.add(records.get(tree.keys[i]));
-                    }
-                    return null;
-                }
-            } else if (RecordHelper.greaterThan(tree.keys[i], searchKey)) {
-                if (!tree.isLeaf()) {
-                    return searchForRange(tree.getChildren()[i], searchKey, lessThan, equalsTo, pointers);
-                } else {
-                    if (!lessThan) {
-                        pointers.add(records.get(tree.keys[i]));
-                    }
-                    return null;
-                }
-            } else {
-                if (!tree.isLeaf()) {
-                    return searchForRange(tree.getChildren()[i+1], searchKey, lessThan, equalsTo, pointers);
-                } else {
-                    // does this and the above actually grab everything? will test in the morning.
-                    pointers.add(records.get(searchKey));
-                    return pointers;
-                }
-            }
+    private void release(){
+        try {
+            nodes.release();
+        } catch (IOException e) {
+            System.err.println("Error writing index on " + columnName + " to disk");
+            e.printStackTrace();
         }
-        return null;
     }
 
     public static void main(String[] args){
@@ -437,9 +927,15 @@ public class BPlusTree implements IBPlusTree{
 
         System.out.println(tree.search(1));
 
-        tree.removeRecordPointer(new RecordPointer(0,13), 5);
-        tree.removeRecordPointer(new RecordPointer(0,14), 6);
-        tree.removeRecordPointer(new RecordPointer(0,15), 7);
+        IndexCursor cursor = tree.cursor(2, false, 8, true);
+        while(cursor.hasNext()){
+            Object key = cursor.getKey();
+            System.out.println(key + " " + cursor.next());
+        }
+
+        tree.removeRecordPointer(new RecordPointer(0,1), 5);
+        tree.removeRecordPointer(new RecordPointer(0,2), 6);
+        tree.removeRecordPointer(new RecordPointer(0,3), 7);
         tree.printTree(tree);
     }
 }
@@ -0,0 +1,99 @@
+package indexing;
+
+/**
+ * Keys of a Double column, kept as doubles. Null keys are handled as in IntKeyArray.
+ */
+class DoubleKeyArray extends KeyArray {
+
+    private final double[] keys;
+    private int nullCount = 0;
+
+    DoubleKeyArray(int capacity) {
+        keys = new double[capacity];
+    }
+
+    @Override
+    Object get(int position) {
+        return position < nullCount ? null : keys[position];
+    }
+
+    @Override
+    void set(int position, Object key) {
+        if (key == null) {
+            nullCount = Math.max(nullCount, position + 1);
+        } else {
+            keys[position] = ((Number) key).doubleValue();
+            nullCount = Math.min(nullCount, position);
+        }
+    }
+
+    @Override
+    void insert(int position, int count, Object key) {
+        System.arraycopy(keys, position, keys, position + 1, count - position);
+        if (key == null) {
+            nullCount++;
+        } else {
+            keys[position] = ((Number) key).doubleValue();
+        }
+    }
+
+    @Override
+    void remove(int position, int count) {
+        System.arraycopy(keys, position + 1, keys, position, count - position - 1);
+        if (position < nullCount) {
+            nullCount--;
+        }
+    }
+
+    @Override
+    int compare(int position, Object key) {
+        if (position < nullCount || key == null) {
+            return position < nullCount ? (key == null ? 0 : -1) : 1;
+        }
+        if (key instanceof Number) {
+            return Double.compare(keys[position], ((Number) key).doubleValue());
+        }
+        return super.compare(position, key);
+    }
+
+    @Override
+    int lowerBound(int from, int to, Object key) {
+        if (!(key instanceof Number)) {
+            return super.lowerBound(from, to, key);
+        }
+        double searchKey = ((Number) key).doubleValue();
+        from = Math.max(from, Math.min(nullCount, to));
+        while (from < to) {
+            int mid = (from + to) >>> 1;
+            if (Double.compare(keys[mid], searchKey) < 0) {
+                from = mid + 1;
+            } else {
+                to = mid;
+            }
+        }
+        return from;
+    }
+
+    @Override
+    int upperBound(int from, int to, Object key) {
+        if (!(key instanceof Number)) {
+            return super.upperBound(from, to, key);
+        }
+        double searchKey = ((Number) key).doubleValue();
+        from = Math.max(from, Math.min(nullCount, to));
+        while (from < to) {
+            int mid = (from + to) >>> 1;
+            if (Double.compare(keys[mid], searchKey) <= 0) {
+                from = mid + 1;
+            } else {
+                to = mid;
+            }
+        }
+        return from;
+    }
+
+    @Override
+    int byteSize(int position) {
+        return position < nullCount ? 1 : 9;
+    }
+}
@@ -0,0 +1,143 @@
+package indexing;
+
+import common.RecordPointer;
+
+import java.io.IOException;
+import java.util.ConcurrentModificationException;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * Walks the record pointers of a BPlusTree between two keys, in key order.
+ *
+ * The cursor starts in the leaf of the lower bound and follows the next links of the leaves,
+ * loading a leaf only once the one before it is used up. Pointers of the same key come in page
+ * order. A null bound leaves that end of the range open.
+ *
+ * Changing the tree while a cursor is open makes the cursor throw a
+ * ConcurrentModificationException. If reading a leaf fails the error is printed, the cursor
+ * ends early and failed() returns true.
+ */
+public class IndexCursor implements Iterator<RecordPointer> {
+
+    private final BPlusTree tree;
+    private final Object lower;
+    private final boolean lowerInclusive;
+    private final Object upper;
+    private final boolean upperInclusive;
+    private final int modCount;
+
+    private BPTreeNode leaf;
+    // The entry of the leaf and the pointer of its posting list the cursor is on
+    private int position;
+    private int offset = 0;
+    private boolean failed = false;
+
+    /**
+     * @param tree the tree to walk
+     * @param lower the lowest key to return; null for no lower bound
+     * @param lowerInclusive true to return the lower bound itself
+     * @param upper the highest key to return; null for no upper bound
+     * @param upperInclusive true to return the upper bound itself
+     */
+    IndexCursor(BPlusTree tree, Object lower, boolean lowerInclusive, Object upper, boolean upperInclusive) {
+        this.tree = tree;
+        this.lower = lower;
+        this.lowerInclusive = lowerInclusive;
+        this.upper = upper;
+        this.upperInclusive = upperInclusive;
+        this.modCount = tree.getModCount();
+        try {
+            leaf = tree.startLeaf(lower);
+            position = leaf == null || lower == null ? 0 : leaf.lowerBound(lower);
+        } catch (IOException e) {
+            fail(e);
+        }
+        settle();
+    }
+
+    /**
+     * Moves forward until the cursor is on a pointer in the range, or off the end of it
+     */
+    private void settle() {
+        try {
+            while (leaf != null) {
+                if (position >= leaf.numKeys) {
+                    leaf = tree.leafAfter(leaf);
+                    position = 0;
+                    offset = 0;
+                    continue;
+                }
+                if (lower != null && !lowerInclusive && leaf.compareKey(position, lower) == 0) {
+                    position++;
+                    continue;
+                }
+                if (upper != null) {
+                    int compare = leaf.compareKey(position, upper);
+                    if (compare > 0 || (compare == 0 && !upperInclusive)) {
+                        leaf = null;
+                        return;
+                    }
+                }
+                if (offset < leaf.getPostings()[position].size()) {
+                    return;
+                }
+                position++;
+                offset = 0;
+            }
+        } catch (IOException e) {
+            fail(e);
+        }
+    }
+
+    private void fail(IOException e) {
+        System.err.println("Error reading index on " + tree.getColumnName());
+        e.printStackTrace();
+        failed = true;
+        leaf = null;
+    }
+
+    private void checkForChanges() {
+        if (tree.getModCount() != modCount) {
+            throw new ConcurrentModificationException("Index on " + tree.getColumnName() + " changed under a cursor");
+        }
+    }
+
+    @Override
+    public boolean hasNext() {
+        checkForChanges();
+        return leaf != null;
+    }
+
+    /**
+     * @return the next pointer packed into a long, see PostingList.pack()
+     */
+    public long nextPacked() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        long pointer = leaf.getPostings()[position].get(offset++);
+        settle();
+        return pointer;
+    }
+
+    @Override
+    public RecordPointer next() {
+        return PostingList.unpack(nextPacked());
+    }
+
+    /**
+     * @return the key the cursor is on, which is the key of the pointer next() returns next;
+     *         null once the cursor is done
+     */
+    public Object getKey() {
+        return leaf == null ? null : leaf.getKey(position);
+    }
+
+    /**
+     * @return true if the cursor stopped early because the index could not be read
+     */
+    public boolean failed() {
+        return failed;
+    }
+}
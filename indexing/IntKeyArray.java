@@ -0,0 +1,102 @@
+package indexing;
+
+/**
+ * Keys of an Integer column, kept as ints.
+ *
+ * A column that allows nulls can have null keys. Nulls sort before every other key, so the null
+ * keys of a node are always its first ones and only their count is kept.
+ */
+class IntKeyArray extends KeyArray {
+
+    private final int[] keys;
+    private int nullCount = 0;
+
+    IntKeyArray(int capacity) {
+        keys = new int[capacity];
+    }
+
+    @Override
+    Object get(int position) {
+        return position < nullCount ? null : keys[position];
+    }
+
+    @Override
+    void set(int position, Object key) {
+        if (key == null) {
+            nullCount = Math.max(nullCount, position + 1);
+        } else {
+            keys[position] = ((Number) key).intValue();
+            nullCount = Math.min(nullCount, position);
+        }
+    }
+
+    @Override
+    void insert(int position, int count, Object key) {
+        System.arraycopy(keys, position, keys, position + 1, count - position);
+        if (key == null) {
+            nullCount++;
+        } else {
+            keys[position] = ((Number) key).intValue();
+        }
+    }
+
+    @Override
+    void remove(int position, int count) {
+        System.arraycopy(keys, position + 1, keys, position, count - position - 1);
+        if (position < nullCount) {
+            nullCount--;
+        }
+    }
+
+    @Override
+    int compare(int position, Object key) {
+        if (position < nullCount || key == null) {
+            return position < nullCount ? (key == null ? 0 : -1) : 1;
+        }
+        if (key instanceof Integer) {
+            return Integer.compare(keys[position], (Integer) key);
+        }
+        return super.compare(position, key);
+    }
+
+    @Override
+    int lowerBound(int from, int to, Object key) {
+        if (!(key instanceof Integer)) {
+            return super.lowerBound(from, to, key);
+        }
+        int searchKey = (Integer) key;
+        from = Math.max(from, Math.min(nullCount, to));
+        while (from < to) {
+            int mid = (from + to) >>> 1;
+            if (keys[mid] < searchKey) {
+                from = mid + 1;
+            } else {
+                to = mid;
+            }
+        }
+        return from;
+    }
+
+    @Override
+    int upperBound(int from, int to, Object key) {
+        if (!(key instanceof Integer)) {
+            return super.upperBound(from, to, key);
+        }
+        int searchKey = (Integer) key;
+        from = Math.max(from, Math.min(nullCount, to));
+        while (from < to) {
+            int mid = (from + to) >>> 1;
+            if (keys[mid] <= searchKey) {
+                from = mid + 1;
+            } else {
+                to = mid;
+            }
+        }
+        return from;
+    }
+
+    @Override
+    int byteSize(int position) {
+        return position < nullCount ? 1 : 5;
+    }
+}
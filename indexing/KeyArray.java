@@ -0,0 +1,111 @@
+package indexing;
+
+import storagemanager.RecordHelper;
+
+/**
+ * The keys of one BPTreeNode, in ascending order.
+ *
+ * Integer and Double columns keep their keys in a primitive array, see IntKeyArray and
+ * DoubleKeyArray, so a lookup compares ints or doubles instead of boxed keys. Every other type
+ * keeps them in an Object array.
+ *
+ * Only the node holding the array knows how many keys are in use, so it passes the count in.
+ */
+abstract class KeyArray {
+
+    /**
+     * @param keyType the attribute type of the indexed column; null if it is not known
+     * @param capacity the most keys the array holds
+     * @return an empty array for keys of the type
+     */
+    static KeyArray forType(String keyType, int capacity) {
+        if (keyType != null && keyType.equalsIgnoreCase("integer")) {
+            return new IntKeyArray(capacity);
+        } else if (keyType != null && keyType.equalsIgnoreCase("double")) {
+            return new DoubleKeyArray(capacity);
+        }
+        return new ObjectKeyArray(capacity);
+    }
+
+    /**
+     * @param position the index of a key
+     * @return the key, boxed
+     */
+    abstract Object get(int position);
+
+    /**
+     * Replaces a key. The keys must stay in order.
+     * @param position the index of the key
+     * @param key the new key
+     */
+    abstract void set(int position, Object key);
+
+    /**
+     * Adds a key, moving the keys from the position on up one
+     * @param position where the key goes
+     * @param count the number of keys in use
+     * @param key the key
+     */
+    abstract void insert(int position, int count, Object key);
+
+    /**
+     * Removes a key, moving the keys after it down one
+     * @param position the index of the key
+     * @param count the number of keys in use
+     */
+    abstract void remove(int position, int count);
+
+    /**
+     * @param position the index of a key
+     * @param key the key to compare against
+     * @return less than, equal to or greater than 0 as the key at the position is below, equal
+     *         to or above the provided key
+     */
+    int compare(int position, Object key) {
+        return RecordHelper.compare(get(position), key);
+    }
+
+    /**
+     * @param from the first index to search
+     * @param to the index after the last one to search
+     * @param key the key to look for
+     * @return the index of the first key in the range at or above the provided key; to if there is none
+     */
+    int lowerBound(int from, int to, Object key) {
+        while (from < to) {
+            int mid = (from + to) >>> 1;
+            if (compare(mid, key) < 0) {
+                from = mid + 1;
+            } else {
+                to = mid;
+            }
+        }
+        return from;
+    }
+
+    /**
+     * @param from the first index to search
+     * @param to the index after the last one to search
+     * @param key the key to look for
+     * @return the index of the first key in the range above the provided key; to if there is none
+     */
+    int upperBound(int from, int to, Object key) {
+        while (from < to) {
+            int mid = (from + to) >>> 1;
+            if (compare(mid, key) <= 0) {
+                from = mid + 1;
+            } else {
+                to = mid;
+            }
+        }
+        return from;
+    }
+
+    /**
+     * @param position the index of a key
+     * @return the number of bytes the key takes in a node page
+     */
+    int byteSize(int position) {
+        return BPTreeNode.keySize(get(position));
+    }
+}
@@ -0,0 +1,155 @@
+package indexing;
+
+import storagemanager.SegmentFile;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+
+/**
+ * The pages of one index: a segment file holding a node per page, and a buffer of the nodes
+ * that are loaded.
+ *
+ * Nodes are read from the segment the first time they are needed and kept in least recently
+ * used order. The buffer only shrinks back to its limit in release(), which the tree calls once
+ * an operation is done, so nodes an operation is still holding are never written out under it.
+ *
+ * Page 0 of the segment is the header page of the tree, see BPlusTree.
+ *
+ * Without a file the nodes only live in memory and nothing is ever evicted.
+ */
+class NodeStore {
+
+    static final int HEADER_PAGE = 0;
+
+    private final SegmentFile segment;
+    private final int keySize;
+    private final String keyType;
+    private final int limit;
+    private final ByteBuffer ioBuffer;
+    private final LinkedHashMap<Integer, BPTreeNode> nodes = new LinkedHashMap<>(16, 0.75f, true);
+
+    /**
+     * @param file the segment file of the index; null to keep the nodes in memory
+     * @param frameSize the size of an index page
+     * @param keySize the number of keys that makes a node split
+     * @param keyType the attribute type of the keys; null if it is not known
+     * @param limit the number of nodes to keep loaded between operations
+     */
+    NodeStore(File file, int frameSize, int keySize, String keyType, int limit) throws IOException {
+        this.segment = file == null ? null : new SegmentFile(file, frameSize);
+        this.keySize = keySize;
+        this.keyType = keyType;
+        this.limit = limit;
+        this.ioBuffer = ByteBuffer.allocate(frameSize);
+    }
+
+    boolean isPersistent() {
+        return segment != null;
+    }
+
+    /**
+     * @param pageIndex the index page of the node
+     * @return the node, read from the segment if it is not loaded
+     */
+    BPTreeNode get(int pageIndex) throws IOException {
+        BPTreeNode node = nodes.get(pageIndex);
+        if (node == null) {
+            if (segment == null || !segment.readPage(pageIndex, ioBuffer)) {
+                throw new IOException("Index page " + pageIndex + " not found");
+            }
+            node = BPTreeNode.read(pageIndex, keySize, keyType, ioBuffer);
+            nodes.put(pageIndex, node);
+        }
+        return node;
+    }
+
+    /**
+     * Adds a new node, or marks a loaded one as changed
+     * @param node the node that was created or changed
+     */
+    void put(BPTreeNode node) {
+        node.setDirty(true);
+        nodes.put(node.getPageIndex(), node);
+    }
+
+    /**
+     * Drops a node that is no longer part of the tree and releases its page
+     * @param node the node to drop
+     */
+    void free(BPTreeNode node) {
+        nodes.remove(node.getPageIndex());
+        if (segment != null) {
+            segment.freePage(node.getPageIndex());
+        }
+    }
+
+    /**
+     * Writes out the least recently used nodes until the buffer is back to its limit
+     */
+    void release() throws IOException {
+        if (segment == null) {
+            return;
+        }
+        Iterator<BPTreeNode> iterator = nodes.values().iterator();
+        while (nodes.size() > limit && iterator.hasNext()) {
+            BPTreeNode node = iterator.next();
+            if (node.isDirty()) {
+                write(node);
+            }
+            iterator.remove();
+        }
+    }
+
+    /**
+     * Writes every changed node and the header page, then syncs the segment
+     * @param header the header page, between position and limit
+     */
+    void flush(ByteBuffer header) throws IOException {
+        if (segment == null) {
+            return;
+        }
+        for (BPTreeNode node : new ArrayList<>(nodes.values())) {
+            if (node.isDirty()) {
+                write(node);
+            }
+        }
+        segment.writePage(HEADER_PAGE, header);
+        segment.sync();
+    }
+
+    /**
+     * @return the header page; null if the segment does not have one yet
+     */
+    ByteBuffer readHeader() throws IOException {
+        if (segment == null || !segment.readPage(HEADER_PAGE, ioBuffer)) {
+            return null;
+        }
+        return ioBuffer;
+    }
+
+    private void write(BPTreeNode node) throws IOException {
+        node.write(ioBuffer);
+        segment.writePage(node.getPageIndex(), ioBuffer);
+        node.setDirty(false);
+    }
+
+    void close() throws IOException {
+        if (segment != null) {
+            segment.close();
+        }
+    }
+
+    /**
+     * Closes the segment and deletes its files, the nodes are dropped without being written
+     */
+    void delete() throws IOException {
+        nodes.clear();
+        if (segment != null) {
+            segment.delete();
+        }
+    }
+}
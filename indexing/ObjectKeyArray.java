@@ -0,0 +1,35 @@
+package indexing;
+
+/**
+ * Keys of any type, boxed
+ */
+class ObjectKeyArray extends KeyArray {
+
+    private final Object[] keys;
+
+    ObjectKeyArray(int capacity) {
+        keys = new Object[capacity];
+    }
+
+    @Override
+    Object get(int position) {
+        return keys[position];
+    }
+
+    @Override
+    void set(int position, Object key) {
+        keys[position] = key;
+    }
+
+    @Override
+    void insert(int position, int count, Object key) {
+        System.arraycopy(keys, position, keys, position + 1, count - position);
+        keys[position] = key;
+    }
+
+    @Override
+    void remove(int position, int count) {
+        System.arraycopy(keys, position + 1, keys, position, count - position - 1);
+        keys[count - 1] = null;
+    }
+}
@@ -0,0 +1,131 @@
+package indexing;
+
+import common.RecordPointer;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * The record pointers of one search key, kept sorted in page order.
+ *
+ * A pointer is packed into a long, the page ID in the high half and the index in the low half,
+ * so sorting the longs sorts the pointers by page and then by index. A list is stored in a leaf
+ * as a 2 byte count followed by 8 bytes per pointer.
+ */
+public class PostingList {
+
+    private long[] pointers;
+    private int size = 0;
+
+    public PostingList() {
+        pointers = new long[1];
+    }
+
+    private PostingList(long[] pointers, int size) {
+        this.pointers = pointers;
+        this.size = size;
+    }
+
+    public static long pack(RecordPointer rp) {
+        return ((long) rp.page() << 32) | (rp.index() & 0xFFFFFFFFL);
+    }
+
+    public static RecordPointer unpack(long pointer) {
+        return new RecordPointer((int) (pointer >>> 32), (int) pointer);
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public long get(int index) {
+        return pointers[index];
+    }
+
+    /**
+     * @return the smallest pointer of the list, which orders the list among others of its key
+     */
+    public long first() {
+        return pointers[0];
+    }
+
+    public boolean contains(long pointer) {
+        return Arrays.binarySearch(pointers, 0, size, pointer) >= 0;
+    }
+
+    /**
+     * @param pointer the pointer to add
+     * @return true if it was added; false if the list already had it
+     */
+    public boolean add(long pointer) {
+        int position = Arrays.binarySearch(pointers, 0, size, pointer);
+        if (position >= 0) {
+            return false;
+        }
+        position = -(position + 1);
+        if (size == pointers.length) {
+            pointers = Arrays.copyOf(pointers, size * 2);
+        }
+        System.arraycopy(pointers, position, pointers, position + 1, size - position);
+        pointers[position] = pointer;
+        size++;
+        return true;
+    }
+
+    /**
+     * @param pointer the pointer to remove
+     * @return true if it was removed; false if the list did not have it
+     */
+    public boolean remove(long pointer) {
+        int position = Arrays.binarySearch(pointers, 0, size, pointer);
+        if (position < 0) {
+            return false;
+        }
+        System.arraycopy(pointers, position + 1, pointers, position, size - position - 1);
+        size--;
+        return true;
+    }
+
+    /**
+     * Moves the pointers from the provided position on into a new list
+     * @param from the index of the first pointer to move
+     * @return the list of the moved pointers
+     */
+    public PostingList split(int from) {
+        PostingList tail = new PostingList(Arrays.copyOfRange(pointers, from, Math.max(size, from + 1)), size - from);
+        size = from;
+        return tail;
+    }
+
+    /**
+     * Copies the pointers of this list into an array
+     * @param out the array to copy into
+     * @param offset where in the array to start
+     */
+    public void copyTo(long[] out, int offset) {
+        System.arraycopy(pointers, 0, out, offset, size);
+    }
+
+    /**
+     * @return the number of bytes the list takes in a leaf
+     */
+    public int byteSize() {
+        return 2 + size * 8;
+    }
+
+    public void write(ByteBuffer out) {
+        out.putShort((short) size);
+        for (int i = 0; i < size; i++) {
+            out.putLong(pointers[i]);
+        }
+    }
+
+    public static PostingList read(ByteBuffer in) {
+        int size = in.getShort() & 0xFFFF;
+        long[] pointers = new long[Math.max(1, size)];
+        for (int i = 0; i < size; i++) {
+            pointers[i] = in.getLong();
+        }
+        return new PostingList(pointers, size);
+    }
+}
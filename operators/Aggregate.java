@@ -0,0 +1,177 @@
+package operators;
+
+import storagemanager.RecordHelper;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+
+/**
+ * Groups rows on some of their columns and computes aggregate functions over each group as the
+ * rows go by. Only the running totals of each group are kept, in a hash table on the values of
+ * the group columns, so the rows can come straight from a scan and are never held.
+ *
+ * As in SQL, COUNT(*) counts every row and the other functions skip nulls: COUNT of a column
+ * counts the values that are not null, and SUM, AVG, MIN and MAX of a group with no values are
+ * null. Rows with a null in a group column are grouped together.
+ */
+public class Aggregate implements Consumer<ArrayList<Object>> {
+
+    public enum Function {
+        COUNT, SUM, MIN, MAX, AVG;
+
+        /**
+         * @param name the name of the function (case insensitive)
+         * @return the function; null if there is none of that name
+         */
+        public static Function fromName(String name) {
+            for (Function function : values()) {
+                if (function.name().equalsIgnoreCase(name.strip())) {
+                    return function;
+                }
+            }
+            return null;
+        }
+    }
+
+    private final int[] groupColumns;
+    private final Function[] functions;
+    private final int[] columns;
+    // Groups are kept in the order they are first seen
+    private final LinkedHashMap<List<Object>, Accumulator[]> groups = new LinkedHashMap<>();
+
+    /**
+     * @param groupColumns the indexes of the columns to group on; empty to put every row in one group
+     * @param functions the functions to compute for each group
+     * @param columns for each function, the index of the column it is over; -1 for COUNT(*)
+     */
+    public Aggregate(List<Integer> groupColumns, List<Function> functions, List<Integer> columns) {
+        this.groupColumns = groupColumns.stream().mapToInt(Integer::intValue).toArray();
+        this.functions = functions.toArray(new Function[0]);
+        this.columns = columns.stream().mapToInt(Integer::intValue).toArray();
+    }
+
+    @Override
+    public void accept(ArrayList<Object> row) {
+        List<Object> key;
+        if (groupColumns.length == 0) {
+            key = Collections.emptyList();
+        } else {
+            ArrayList<Object> values = new ArrayList<>(groupColumns.length);
+            for (int column : groupColumns) {
+                values.add(Join.key(row.get(column)));
+            }
+            key = values;
+        }
+        Accumulator[] accumulators = groups.get(key);
+        if (accumulators == null) {
+            accumulators = newAccumulators();
+            groups.put(key, accumulators);
+        }
+        for (int i = 0; i < functions.length; i++) {
+            if (columns[i] == -1) {
+                accumulators[i].count++;
+            } else {
+                accumulators[i].add(functions[i], row.get(columns[i]));
+            }
+        }
+    }
+
+    /**
+     * @return a row for every group, in the order the groups were first seen, holding the values
+     *         of the group columns and then the value of each function. With no group columns
+     *         there is always one row, even if no rows came in. Null if a sum of integers does
+     *         not fit in an integer.
+     */
+    public ArrayList<ArrayList<Object>> results() {
+        if (groups.isEmpty() && groupColumns.length == 0) {
+            groups.put(Collections.emptyList(), newAccumulators());
+        }
+        ArrayList<ArrayList<Object>> results = new ArrayList<>(groups.size());
+        for (Map.Entry<List<Object>, Accumulator[]> group : groups.entrySet()) {
+            ArrayList<Object> row = new ArrayList<>(groupColumns.length + functions.length);
+            row.addAll(group.getKey());
+            Accumulator[] accumulators = group.getValue();
+            for (int i = 0; i < functions.length; i++) {
+                Accumulator accumulator = accumulators[i];
+                if (functions[i] == Function.SUM && !accumulator.doubles
+                        && (accumulator.intSum > Integer.MAX_VALUE || accumulator.intSum < Integer.MIN_VALUE)) {
+                    System.err.println("Sum is too large for an integer");
+                    return null;
+                }
+                row.add(accumulator.result(functions[i]));
+            }
+            results.add(row);
+        }
+        return results;
+    }
+
+    private Accumulator[] newAccumulators() {
+        Accumulator[] accumulators = new Accumulator[functions.length];
+        for (int i = 0; i < accumulators.length; i++) {
+            accumulators[i] = new Accumulator();
+        }
+        return accumulators;
+    }
+
+    /**
+     * The running total of one function over one group
+     */
+    private static class Accumulator {
+        long count = 0;
+        long intSum = 0;
+        double doubleSum = 0;
+        // True once a double is summed, the column is a double column
+        boolean doubles = false;
+        Object extreme = null;
+
+        void add(Function function, Object value) {
+            if (value == null) {
+                return;
+            }
+            count++;
+            switch (function) {
+                case SUM:
+                case AVG:
+                    if (value instanceof Integer) {
+                        intSum += (Integer) value;
+                    } else {
+                        doubleSum += ((Number) value).doubleValue();
+                        doubles = true;
+                    }
+                    break;
+                case MIN:
+                    if (extreme == null || RecordHelper.compare(value, extreme) < 0) {
+                        extreme = value;
+                    }
+                    break;
+                case MAX:
+                    if (extreme == null || RecordHelper.compare(value, extreme) > 0) {
+                        extreme = value;
+                    }
+                    break;
+                default:
+                    break;
+            }
+        }
+
+        Object result(Function function) {
+            switch (function) {
+                case COUNT:
+                    return (int) count;
+                case SUM:
+                    if (count == 0) {
+                        return null;
+                    }
+                    return doubles ? (Object) (doubleSum + intSum) : (Object) (int) intSum;
+                case AVG:
+                    return count == 0 ? null : (doubleSum + intSum) / count;
+                default:
+                    return extreme;
+            }
+        }
+    }
+}
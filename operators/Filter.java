@@ -0,0 +1,43 @@
+package operators;
+
+import common.Attribute;
+
+import java.util.ArrayList;
+import java.util.function.Predicate;
+
+/**
+ * Passes on only the rows that pass a test, such as a compiled where clause
+ */
+public class Filter implements Operator {
+
+    private final Operator input;
+    private final Predicate<ArrayList<Object>> predicate;
+
+    /**
+     * @param input the rows to test
+     * @param predicate the test of a row
+     */
+    public Filter(Operator input, Predicate<ArrayList<Object>> predicate) {
+        this.input = input;
+        this.predicate = predicate;
+    }
+
+    @Override
+    public ArrayList<Attribute> getAttributes() {
+        return input.getAttributes();
+    }
+
+    @Override
+    public ArrayList<Object> next() {
+        ArrayList<Object> row = input.next();
+        while (row != null && !predicate.test(row)) {
+            row = input.next();
+        }
+        return row;
+    }
+
+    @Override
+    public void close() {
+        input.close();
+    }
+}
@@ -0,0 +1,134 @@
+package operators;
+
+import common.Attribute;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * Joins the rows of two inputs into combined rows, the columns of the left row followed by
+ * those of the right one. The right input is read into memory the first time a row is asked
+ * for, the left one is streamed.
+ *
+ * Both kinds of join return the combined rows in the same order: every match of the first left
+ * row in right order, then every match of the second, and so on. This is the order of a
+ * cartesian product, so a hash join gives the same rows in the same order as filtering the
+ * product would.
+ */
+public class Join implements Operator {
+
+    private final Operator left;
+    private final int leftColumn;
+    private final Operator right;
+    private final int rightColumn;
+    private final ArrayList<Attribute> attributes;
+
+    // Every right row for a product, the right rows by join column for a hash join
+    private List<ArrayList<Object>> rightRows;
+    private HashMap<Object, ArrayList<ArrayList<Object>>> table;
+    private ArrayList<Object> leftRow;
+    private Iterator<ArrayList<Object>> matches = Collections.emptyIterator();
+
+    /**
+     * Combines every left row with every right row
+     * @param left the left rows
+     * @param right the right rows
+     */
+    public Join(Operator left, Operator right) {
+        this(left, -1, right, -1);
+    }
+
+    /**
+     * Combines the left and right rows whose join columns are equal. The right rows are put in a
+     * hash table on their join column and each left row looks up its matches, so the join takes
+     * one pass over each input instead of one pass over the product.
+     *
+     * Both columns must be of the same type. A null matches nothing, as a null is not equal to
+     * anything in a where clause.
+     * @param left the left rows
+     * @param leftColumn the index of the join column in a left row
+     * @param right the right rows
+     * @param rightColumn the index of the join column in a right row
+     */
+    public Join(Operator left, int leftColumn, Operator right, int rightColumn) {
+        this.left = left;
+        this.leftColumn = leftColumn;
+        this.right = right;
+        this.rightColumn = rightColumn;
+        this.attributes = new ArrayList<>(left.getAttributes());
+        attributes.addAll(right.getAttributes());
+    }
+
+    @Override
+    public ArrayList<Attribute> getAttributes() {
+        return attributes;
+    }
+
+    @Override
+    public ArrayList<Object> next() {
+        if (rightRows == null && table == null) {
+            build();
+        }
+        while (!matches.hasNext()) {
+            leftRow = left.next();
+            if (leftRow == null) {
+                return null;
+            }
+            if (table == null) {
+                matches = rightRows.iterator();
+            } else {
+                Object key = key(leftRow.get(leftColumn));
+                ArrayList<ArrayList<Object>> found = key == null ? null : table.get(key);
+                matches = found == null ? Collections.emptyIterator() : found.iterator();
+            }
+        }
+        ArrayList<Object> rightRow = matches.next();
+        ArrayList<Object> combined = new ArrayList<>(leftRow.size() + rightRow.size());
+        combined.addAll(leftRow);
+        combined.addAll(rightRow);
+        return combined;
+    }
+
+    /**
+     * Reads the right input into memory, as a list for a product or a hash table for a hash join
+     */
+    private void build() {
+        if (rightColumn == -1) {
+            rightRows = new ArrayList<>();
+            for (ArrayList<Object> row = right.next(); row != null; row = right.next()) {
+                rightRows.add(row);
+            }
+            return;
+        }
+        table = new HashMap<>();
+        for (ArrayList<Object> row = right.next(); row != null; row = right.next()) {
+            Object key = key(row.get(rightColumn));
+            if (key != null) {
+                table.computeIfAbsent(key, k -> new ArrayList<>(1)).add(row);
+            }
+        }
+    }
+
+    /**
+     * @param value a value of a join column
+     * @return the value as a hash key; 0.0 and -0.0 are equal in a where clause, so both give 0.0
+     */
+    static Object key(Object value) {
+        if (value instanceof Double && (Double) value == 0.0) {
+            return 0.0;
+        }
+        return value;
+    }
+
+    @Override
+    public void close() {
+        left.close();
+        right.close();
+        rightRows = Collections.emptyList();
+        table = null;
+        matches = Collections.emptyIterator();
+    }
+}
@@ -0,0 +1,55 @@
+package operators;
+
+import common.Attribute;
+
+import java.util.ArrayList;
+
+/**
+ * Skips the first rows and passes on at most a number of rows after them. Once it has passed on
+ * its last row the operators under it are closed, so a scan under it reads no further pages.
+ */
+public class Limit implements Operator {
+
+    private final Operator input;
+    private int offset;
+    private int remaining;
+
+    /**
+     * @param input the rows
+     * @param offset how many rows to skip
+     * @param count the most rows to pass on after them
+     */
+    public Limit(Operator input, int offset, int count) {
+        this.input = input;
+        this.offset = offset;
+        this.remaining = count;
+    }
+
+    @Override
+    public ArrayList<Attribute> getAttributes() {
+        return input.getAttributes();
+    }
+
+    @Override
+    public ArrayList<Object> next() {
+        if (remaining <= 0) {
+            return null;
+        }
+        ArrayList<Object> row = input.next();
+        while (row != null && offset > 0) {
+            offset--;
+            row = input.next();
+        }
+        remaining = row == null ? 0 : remaining - 1;
+        if (remaining == 0) {
+            input.close();
+        }
+        return row;
+    }
+
+    @Override
+    public void close() {
+        remaining = 0;
+        input.close();
+    }
+}
@@ -0,0 +1,36 @@
+package operators;
+
+import common.Attribute;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+
+/**
+ * Returns the rows of a relation already held in memory, such as the records an index lookup
+ * found or the groups of an aggregate
+ */
+public class ListScan implements Operator {
+
+    private final ArrayList<Attribute> attributes;
+    private Iterator<ArrayList<Object>> rows;
+
+    public ListScan(Relation relation) {
+        this.attributes = relation.getAttributes();
+        this.rows = relation.getRows().iterator();
+    }
+
+    @Override
+    public ArrayList<Attribute> getAttributes() {
+        return attributes;
+    }
+
+    @Override
+    public ArrayList<Object> next() {
+        return rows != null && rows.hasNext() ? rows.next() : null;
+    }
+
+    @Override
+    public void close() {
+        rows = null;
+    }
+}
@@ -0,0 +1,33 @@
+package operators;
+
+import common.Attribute;
+
+import java.util.ArrayList;
+
+/**
+ * One step of the plan of a select. Rows are pulled up through the plan one at a time: each
+ * operator asks the operators under it for a row only when it is asked for one itself, so a
+ * plan that does not sort or hash never holds more than the page each of its scans is reading.
+ * A limit at the top stops the scans under it as soon as it has its rows.
+ *
+ * Operators that have to see every row before giving one back, a sort or the build side of a
+ * hash join, read their input the first time next() is called.
+ */
+public interface Operator {
+
+    /**
+     * @return the attributes of the rows the operator returns
+     */
+    ArrayList<Attribute> getAttributes();
+
+    /**
+     * @return the next row; null once there are no more
+     */
+    ArrayList<Object> next();
+
+    /**
+     * Stops the operator and the operators under it before their rows run out, releasing
+     * anything they hold. Closing an operator that has run out does nothing.
+     */
+    void close();
+}
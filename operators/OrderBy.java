@@ -0,0 +1,96 @@
+package operators;
+
+import common.Attribute;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * Sorts its input with a Sort, which reads every input row the first time a row is asked for.
+ * If only the first rows are wanted they are picked out with Sort.top() instead.
+ *
+ * If the sort cannot write or read its run files the error is printed and the rows end early.
+ */
+public class OrderBy implements Operator {
+
+    private final Operator input;
+    private final Sort sort;
+    private final int limit;
+    private Sort.SortedRows sorted;
+    private boolean closed = false;
+
+    /**
+     * @param input the rows to sort
+     * @param sort the sort to put them through
+     * @param limit how many of the first rows are wanted; -1 for every one
+     */
+    public OrderBy(Operator input, Sort sort, int limit) {
+        this.input = input;
+        this.sort = sort;
+        this.limit = limit;
+    }
+
+    @Override
+    public ArrayList<Attribute> getAttributes() {
+        return input.getAttributes();
+    }
+
+    @Override
+    public ArrayList<Object> next() {
+        if (closed) {
+            return null;
+        }
+        if (sorted == null) {
+            Iterator<ArrayList<Object>> rows = rows(input);
+            sorted = limit == -1 ? sort.sort(rows) : sort.top(rows, limit);
+            if (sorted == null) {
+                System.err.println("Could not sort rows to orderby");
+                close();
+                return null;
+            }
+        }
+        if (sorted.hasNext()) {
+            return sorted.next();
+        }
+        if (sorted.failed()) {
+            System.err.println("Could not sort rows to orderby");
+        }
+        close();
+        return null;
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+        if (sorted != null) {
+            sorted.close();
+        }
+        input.close();
+    }
+
+    /**
+     * @param input an operator
+     * @return its rows as an iterator, for Sort
+     */
+    private static Iterator<ArrayList<Object>> rows(Operator input) {
+        return new Iterator<ArrayList<Object>>() {
+            private ArrayList<Object> next = input.next();
+
+            @Override
+            public boolean hasNext() {
+                return next != null;
+            }
+
+            @Override
+            public ArrayList<Object> next() {
+                if (next == null) {
+                    throw new NoSuchElementException();
+                }
+                ArrayList<Object> row = next;
+                next = input.next();
+                return row;
+            }
+        };
+    }
+}
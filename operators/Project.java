@@ -0,0 +1,52 @@
+package operators;
+
+import common.Attribute;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Keeps only some of the columns of each row, in the order they are asked for
+ */
+public class Project implements Operator {
+
+    private final Operator input;
+    private final int[] columns;
+    private final ArrayList<Attribute> attributes;
+
+    /**
+     * @param input the rows
+     * @param columns the indexes of the columns to keep, in the order to keep them
+     */
+    public Project(Operator input, List<Integer> columns) {
+        this.input = input;
+        this.columns = columns.stream().mapToInt(Integer::intValue).toArray();
+        this.attributes = new ArrayList<>(columns.size());
+        for (int column : this.columns) {
+            attributes.add(input.getAttributes().get(column));
+        }
+    }
+
+    @Override
+    public ArrayList<Attribute> getAttributes() {
+        return attributes;
+    }
+
+    @Override
+    public ArrayList<Object> next() {
+        ArrayList<Object> row = input.next();
+        if (row == null) {
+            return null;
+        }
+        ArrayList<Object> projected = new ArrayList<>(columns.length);
+        for (int column : columns) {
+            projected.add(row.get(column));
+        }
+        return projected;
+    }
+
+    @Override
+    public void close() {
+        input.close();
+    }
+}
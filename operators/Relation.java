@@ -0,0 +1,77 @@
+package operators;
+
+import common.Attribute;
+
+import java.util.ArrayList;
+
+/**
+ * Rows held in memory with the attributes that describe them, for the results of a query that
+ * have to be held at once, such as the groups of an aggregate. A ListScan passes them on to the
+ * operators of a query. Unlike a Table a relation has no pages, so building one never goes
+ * through the storage manager.
+ *
+ * Attributes of rows joined from stored tables are named <tablename>.<column_name>. A column
+ * can be looked up by that name or, if no other table has a column of the same name, by the
+ * column name alone.
+ */
+public class Relation {
+
+    private final ArrayList<Attribute> attributes;
+    private final ArrayList<ArrayList<Object>> rows;
+
+    /**
+     * @param attributes the attributes of the rows
+     * @param rows the rows; the relation keeps the list, it is not copied
+     */
+    public Relation(ArrayList<Attribute> attributes, ArrayList<ArrayList<Object>> rows) {
+        this.attributes = attributes;
+        this.rows = rows;
+    }
+
+    public ArrayList<Attribute> getAttributes() {
+        return attributes;
+    }
+
+    public ArrayList<ArrayList<Object>> getRows() {
+        return rows;
+    }
+
+    public int size() {
+        return rows.size();
+    }
+
+    /**
+     * Finds a column by name. An unqualified name matches the column of that name in any table;
+     * only if there is none does it match an unqualified attribute such as the row id.
+     * @param columnName the column, as <column_name> or <tablename>.<column_name>
+     * @return the index of the column; -1 if there is none or the name is ambiguous
+     */
+    public int getColumnIndex(String columnName) {
+        columnName = columnName.strip();
+        boolean qualified = columnName.contains(".");
+        int found = -1;
+        for (int i = 0; i < attributes.size(); i++) {
+            String name = attributes.get(i).getAttributeName();
+            int dot = name.indexOf('.');
+            if (qualified) {
+                if (name.equalsIgnoreCase(columnName)) {
+                    return i;
+                }
+            } else if (dot != -1 && name.substring(dot + 1).equalsIgnoreCase(columnName)) {
+                if (found != -1) {
+                    System.err.println("Attempting to use column name without specifying table name: " + columnName);
+                    return -1;
+                }
+                found = i;
+            }
+        }
+        if (found == -1 && !qualified) {
+            for (int i = 0; i < attributes.size(); i++) {
+                if (attributes.get(i).getAttributeName().equalsIgnoreCase(columnName)) {
+                    return i;
+                }
+            }
+        }
+        return found;
+    }
+}
@@ -0,0 +1,44 @@
+package operators;
+
+import common.Attribute;
+
+import java.util.ArrayList;
+
+/**
+ * Puts an id column in front of each row, numbering the rows from 0 in the order they come
+ */
+public class RowNumber implements Operator {
+
+    private final Operator input;
+    private final ArrayList<Attribute> attributes;
+    private int rowIndex = 0;
+
+    public RowNumber(Operator input) {
+        this.input = input;
+        this.attributes = new ArrayList<>(input.getAttributes().size() + 1);
+        attributes.add(new Attribute("id", "integer"));
+        attributes.addAll(input.getAttributes());
+    }
+
+    @Override
+    public ArrayList<Attribute> getAttributes() {
+        return attributes;
+    }
+
+    @Override
+    public ArrayList<Object> next() {
+        ArrayList<Object> row = input.next();
+        if (row == null) {
+            return null;
+        }
+        ArrayList<Object> numbered = new ArrayList<>(row.size() + 1);
+        numbered.add(rowIndex++);
+        numbered.addAll(row);
+        return numbered;
+    }
+
+    @Override
+    public void close() {
+        input.close();
+    }
+}
@@ -0,0 +1,472 @@
+package operators;
+
+import storagemanager.RecordHelper;
+
+import java.io.*;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.PriorityQueue;
+
+/**
+ * Sorts rows on one or more columns, each ascending or descending. Nulls come first in
+ * ascending order, as in RecordHelper.compare().
+ *
+ * Rows are sorted in memory while their estimated size stays under the memory budget. Past the
+ * budget each full batch is sorted and written to a run file in a temporary directory, and the
+ * runs are merged back k at a time as the sorted rows are read. Rows that compare equal keep the
+ * order they came in.
+ *
+ * When only the first rows are wanted, top() keeps them in a heap as the rows go by instead, as
+ * long as that many rows fit in the memory budget.
+ *
+ * If a run file cannot be written or read the error is printed and sort() returns null, or the
+ * iterator it returned ends early with failed() true.
+ */
+public class Sort {
+
+    // The most run files merged at once, each one open with its own read buffer
+    private static final int MAX_FAN_IN = 64;
+
+    private static final byte NULL = 0;
+    private static final byte INTEGER = 1;
+    private static final byte DOUBLE = 2;
+    private static final byte BOOLEAN = 3;
+    private static final byte STRING = 4;
+
+    private final Comparator<ArrayList<Object>> order;
+    private final long memoryBudget;
+    private final File tempParent;
+    private File tempDirectory;
+    private int runCount = 0;
+
+    /**
+     * @param columns the indexes of the columns to sort on, the first one first
+     * @param descending for each column, true to sort it from high to low
+     * @param memoryBudget the most bytes of rows to sort in memory at once
+     * @param tempParent the directory to put the run files under; null for the system default
+     */
+    public Sort(List<Integer> columns, List<Boolean> descending, long memoryBudget, File tempParent) {
+        Comparator<ArrayList<Object>> order = null;
+        for (int i = 0; i < columns.size(); i++) {
+            int column = columns.get(i);
+            Comparator<ArrayList<Object>> key = (a, b) -> RecordHelper.compare(a.get(column), b.get(column));
+            if (descending.get(i)) {
+                key = key.reversed();
+            }
+            order = order == null ? key : order.thenComparing(key);
+        }
+        this.order = order == null ? (a, b) -> 0 : order;
+        this.memoryBudget = memoryBudget;
+        this.tempParent = tempParent;
+    }
+
+    /**
+     * @param rows the rows to sort
+     * @return the rows in sorted order; null if a run file could not be written
+     */
+    public SortedRows sort(Iterator<ArrayList<Object>> rows) {
+        ArrayList<ArrayList<Object>> batch = new ArrayList<>();
+        ArrayList<File> runs = new ArrayList<>();
+        long batchBytes = 0;
+        try {
+            while (rows.hasNext()) {
+                ArrayList<Object> row = rows.next();
+                batch.add(row);
+                batchBytes += estimateSize(row);
+                if (batchBytes > memoryBudget) {
+                    batch.sort(order);
+                    runs.add(writeRun(batch.iterator()));
+                    batch = new ArrayList<>();
+                    batchBytes = 0;
+                }
+            }
+            batch.sort(order);
+            if (runs.isEmpty()) {
+                return new SortedRows(batch.iterator(), null);
+            }
+            // Merge passes until every run can be open at once, the last batch stays in memory.
+            // Each pass merges neighbouring runs, so the runs stay in the order their rows came in.
+            while (runs.size() + 1 > MAX_FAN_IN) {
+                ArrayList<File> merged = new ArrayList<>();
+                for (int from = 0; from < runs.size(); from += MAX_FAN_IN) {
+                    List<File> group = runs.subList(from, Math.min(runs.size(), from + MAX_FAN_IN));
+                    if (group.size() == 1) {
+                        merged.add(group.get(0));
+                        continue;
+                    }
+                    SortedRows groupRows = merge(group, null);
+                    merged.add(writeRun(groupRows));
+                    if (groupRows.failed()) {
+                        throw new IOException("Could not merge run files");
+                    }
+                }
+                runs = merged;
+            }
+            return merge(runs, batch.iterator());
+        } catch (IOException e) {
+            System.err.println("Error writing sort run files");
+            e.printStackTrace();
+            File[] files = tempDirectory == null ? null : tempDirectory.listFiles();
+            if (files != null) {
+                for (File file : files) {
+                    file.delete();
+                }
+            }
+            deleteTempDirectory();
+            return null;
+        }
+    }
+
+    /**
+     * Finds the first rows of the sorted order without sorting the rest. A heap holds the lowest
+     * rows seen so far with the highest of them on top, so each row is kept or dropped as it
+     * comes in and no run files are written. If the heap grows past the memory budget before
+     * it holds count rows, every row is sorted with sort() instead, which spills to run files.
+     * @param rows the rows to sort
+     * @param count how many rows to keep
+     * @return the first count rows in sorted order, equal rows in the order they came in; null
+     * if a run file could not be written
+     */
+    public SortedRows top(Iterator<ArrayList<Object>> rows, int count) {
+        ArrayList<ArrayList<Object>> kept = new ArrayList<>();
+        if (count <= 0) {
+            return new SortedRows(kept.iterator(), null);
+        }
+        Comparator<Ranked> byOrder = (a, b) -> {
+            int compare = order.compare(a.row, b.row);
+            return compare != 0 ? compare : Long.compare(a.arrival, b.arrival);
+        };
+        PriorityQueue<Ranked> heap = new PriorityQueue<>(Math.min(count, 1024), byOrder.reversed());
+        long arrival = 0;
+        long heapBytes = 0;
+        while (rows.hasNext()) {
+            Ranked ranked = new Ranked(rows.next(), arrival++);
+            if (heap.size() < count) {
+                heap.add(ranked);
+                heapBytes += estimateSize(ranked.row);
+                if (heapBytes > memoryBudget) {
+                    // No row has been dropped yet, the heap goes back into arrival order ahead
+                    // of the rows not read yet so equal rows keep their order
+                    ArrayList<Ranked> seen = new ArrayList<>(heap);
+                    seen.sort(Comparator.comparingLong(r -> r.arrival));
+                    ArrayList<ArrayList<Object>> seenRows = new ArrayList<>(seen.size());
+                    for (Ranked r : seen) {
+                        seenRows.add(r.row);
+                    }
+                    heap = null;
+                    seen = null;
+                    SortedRows sorted = sort(concat(seenRows.iterator(), rows));
+                    if (sorted != null) {
+                        sorted.remaining = count;
+                    }
+                    return sorted;
+                }
+            } else if (byOrder.compare(ranked, heap.peek()) < 0) {
+                heap.poll();
+                heap.add(ranked);
+            }
+        }
+        ArrayList<Ranked> sorted = new ArrayList<>(heap);
+        sorted.sort(byOrder);
+        for (Ranked ranked : sorted) {
+            kept.add(ranked.row);
+        }
+        return new SortedRows(kept.iterator(), null);
+    }
+
+    /**
+     * @return the rows of first followed by the rows of second
+     */
+    private static Iterator<ArrayList<Object>> concat(Iterator<ArrayList<Object>> first, Iterator<ArrayList<Object>> second) {
+        return new Iterator<ArrayList<Object>>() {
+            @Override
+            public boolean hasNext() {
+                return first.hasNext() || second.hasNext();
+            }
+
+            @Override
+            public ArrayList<Object> next() {
+                return first.hasNext() ? first.next() : second.next();
+            }
+        };
+    }
+
+    /**
+     * Opens every run and merges them with the rows still in memory
+     * @param runs the run files
+     * @param inMemory sorted rows that were never written out; may be null
+     * @return the merged rows
+     */
+    private SortedRows merge(List<File> runs, Iterator<ArrayList<Object>> inMemory) throws IOException {
+        ArrayList<Source> sources = new ArrayList<>();
+        ArrayList<RunReader> readers = new ArrayList<>();
+        try {
+            for (File run : runs) {
+                RunReader reader = new RunReader(run);
+                readers.add(reader);
+                sources.add(reader);
+            }
+        } catch (IOException e) {
+            for (RunReader reader : readers) {
+                reader.close();
+            }
+            throw e;
+        }
+        if (inMemory != null) {
+            sources.add(() -> inMemory.hasNext() ? inMemory.next() : null);
+        }
+        return new SortedRows(new MergeIterator(sources), readers);
+    }
+
+    private File writeRun(Iterator<ArrayList<Object>> rows) throws IOException {
+        if (tempDirectory == null) {
+            tempDirectory = tempParent == null ? Files.createTempDirectory("sort").toFile()
+                    : Files.createTempDirectory(tempParent.toPath(), "sort").toFile();
+        }
+        File run = new File(tempDirectory, "run" + (runCount++));
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(run), 65536))) {
+            while (rows.hasNext()) {
+                ArrayList<Object> row = rows.next();
+                out.writeInt(row.size());
+                for (Object value : row) {
+                    writeValue(out, value);
+                }
+            }
+        }
+        return run;
+    }
+
+    private void deleteTempDirectory() {
+        if (tempDirectory != null && tempDirectory.delete()) {
+            tempDirectory = null;
+        }
+    }
+
+    private static void writeValue(DataOutputStream out, Object value) throws IOException {
+        if (value == null) {
+            out.writeByte(NULL);
+        } else if (value instanceof Integer) {
+            out.writeByte(INTEGER);
+            out.writeInt((Integer) value);
+        } else if (value instanceof Double) {
+            out.writeByte(DOUBLE);
+            out.writeDouble((Double) value);
+        } else if (value instanceof Boolean) {
+            out.writeByte(BOOLEAN);
+            out.writeBoolean((Boolean) value);
+        } else {
+            out.writeByte(STRING);
+            out.writeUTF(value.toString());
+        }
+    }
+
+    private static Object readValue(DataInputStream in) throws IOException {
+        byte type = in.readByte();
+        switch (type) {
+            case NULL:
+                return null;
+            case INTEGER:
+                return in.readInt();
+            case DOUBLE:
+                return in.readDouble();
+            case BOOLEAN:
+                return in.readBoolean();
+            case STRING:
+                return in.readUTF();
+            default:
+                throw new IOException("Unknown value type in sort run: " + type);
+        }
+    }
+
+    /**
+     * @param row a row
+     * @return about how many bytes of heap the row takes
+     */
+    private static long estimateSize(ArrayList<Object> row) {
+        long size = 40 + 8L * row.size();
+        for (Object value : row) {
+            if (value instanceof String) {
+                size += 40 + 2L * ((String) value).length();
+            } else if (value != null) {
+                size += 16;
+            }
+        }
+        return size;
+    }
+
+    /**
+     * Sorted rows to merge
+     */
+    private interface Source {
+        /**
+         * @return the next row; null once there are no more
+         */
+        ArrayList<Object> read() throws IOException;
+    }
+
+    /**
+     * Reads the rows of one run file back, deleting the file once they are all read
+     */
+    private static class RunReader implements Source {
+
+        private final File run;
+        private final DataInputStream in;
+        private ArrayList<Object> next;
+
+        RunReader(File run) throws IOException {
+            this.run = run;
+            this.in = new DataInputStream(new BufferedInputStream(new FileInputStream(run), 65536));
+        }
+
+        @Override
+        public ArrayList<Object> read() throws IOException {
+            int size;
+            try {
+                size = in.readInt();
+            } catch (EOFException e) {
+                close();
+                return null;
+            }
+            ArrayList<Object> row = new ArrayList<>(size);
+            for (int i = 0; i < size; i++) {
+                row.add(readValue(in));
+            }
+            return row;
+        }
+
+        void close() {
+            try {
+                in.close();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+            run.delete();
+        }
+    }
+
+    /**
+     * Merges sorted sources by always taking the lowest head row. Equal rows are taken from the
+     * source that came first, which holds the rows that came in first.
+     */
+    private class MergeIterator implements Iterator<ArrayList<Object>> {
+
+        private final List<Source> sources;
+        private final PriorityQueue<Head> heads;
+        private boolean failed = false;
+
+        MergeIterator(List<Source> sources) {
+            this.sources = sources;
+            this.heads = new PriorityQueue<>(Math.max(1, sources.size()), (a, b) -> {
+                int compare = order.compare(a.row, b.row);
+                return compare != 0 ? compare : Integer.compare(a.source, b.source);
+            });
+            for (int i = 0; i < sources.size(); i++) {
+                advance(i);
+            }
+        }
+
+        private void advance(int source) {
+            try {
+                ArrayList<Object> row = sources.get(source).read();
+                if (row != null) {
+                    heads.add(new Head(row, source));
+                }
+            } catch (IOException e) {
+                System.err.println("Error reading sort run file");
+                e.printStackTrace();
+                failed = true;
+                heads.clear();
+            }
+        }
+
+        @Override
+        public boolean hasNext() {
+            return !heads.isEmpty();
+        }
+
+        @Override
+        public ArrayList<Object> next() {
+            Head head = heads.poll();
+            if (head == null) {
+                throw new NoSuchElementException();
+            }
+            advance(head.source);
+            return head.row;
+        }
+    }
+
+    private static class Head {
+        final ArrayList<Object> row;
+        final int source;
+
+        Head(ArrayList<Object> row, int source) {
+            this.row = row;
+            this.source = source;
+        }
+    }
+
+    private static class Ranked {
+        final ArrayList<Object> row;
+        final long arrival;
+
+        Ranked(ArrayList<Object> row, long arrival) {
+            this.row = row;
+            this.arrival = arrival;
+        }
+    }
+
+    /**
+     * The sorted rows, read as they are merged. Once every row is read the run files and the
+     * temporary directory are gone; close() removes them if the rows are not all read.
+     */
+    public class SortedRows implements Iterator<ArrayList<Object>> {
+
+        private final Iterator<ArrayList<Object>> rows;
+        private final List<RunReader> readers;
+        // How many more rows to give back, for top()
+        private long remaining = Long.MAX_VALUE;
+
+        SortedRows(Iterator<ArrayList<Object>> rows, List<RunReader> readers) {
+            this.rows = rows;
+            this.readers = readers;
+        }
+
+        @Override
+        public boolean hasNext() {
+            if (remaining > 0 && rows.hasNext()) {
+                return true;
+            }
+            close();
+            return false;
+        }
+
+        @Override
+        public ArrayList<Object> next() {
+            if (remaining <= 0) {
+                throw new NoSuchElementException();
+            }
+            remaining--;
+            return rows.next();
+        }
+
+        /**
+         * @return true if the rows ended early because a run file could not be read
+         */
+        public boolean failed() {
+            return rows instanceof MergeIterator && ((MergeIterator) rows).failed;
+        }
+
+        public void close() {
+            if (readers != null) {
+                for (RunReader reader : readers) {
+                    reader.close();
+                }
+                deleteTempDirectory();
+            }
+        }
+    }
+}
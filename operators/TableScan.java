@@ -0,0 +1,51 @@
+package operators;
+
+import common.Attribute;
+import common.Table;
+import storagemanager.StorageManager;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+
+/**
+ * Reads the records of a stored table in primary key order, a page at a time. A page is only
+ * loaded once every record of the page before it has been pulled, and the page buffer keeps to
+ * its limit while the scan runs.
+ */
+public class TableScan implements Operator {
+
+    private final ArrayList<Attribute> attributes;
+    private Iterator<ArrayList<Object>> records;
+
+    public TableScan(Table table) {
+        this.attributes = attributesOf(table);
+        this.records = ((StorageManager) StorageManager.getStorageManager()).scan(table);
+    }
+
+    /**
+     * @param table a stored table
+     * @return the attributes of its records, named <tablename>.<column_name>
+     */
+    public static ArrayList<Attribute> attributesOf(Table table) {
+        ArrayList<Attribute> attributes = new ArrayList<>();
+        for (Attribute attr : table.getAttributes()) {
+            attributes.add(new Attribute(table.getTableName() + "." + attr.getAttributeName(), attr.getAttributeType()));
+        }
+        return attributes;
+    }
+
+    @Override
+    public ArrayList<Attribute> getAttributes() {
+        return attributes;
+    }
+
+    @Override
+    public ArrayList<Object> next() {
+        return records != null && records.hasNext() ? records.next() : null;
+    }
+
+    @Override
+    public void close() {
+        records = null;
+    }
+}
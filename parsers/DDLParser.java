@@ -121,8 +121,10 @@ public class DDLParser {
                 return false;
             }
             ArrayList<ArrayList<Object>> oldRecords = sm.getRecords(table);
+            // Dropping the table deletes every index on it, the ones on the other columns are built again
+            ArrayList<String> indexedColumns = table.getIndexedColumns();
             ArrayList<Attribute> newAttributes = table.getAttributes();
-            newAttributes.remove(columnIndex);
+            indexedColumns.remove(newAttributes.remove(columnIndex).getAttributeName());
             if(!catalog.dropTable(table.getTableName())){
                 return false;
             }
@@ -133,6 +135,9 @@ public class DDLParser {
                     newRecord.remove(columnIndex);
                     success = success && sm.insertRecord(newTable, newRecord);
                 }
+            for (String column : indexedColumns) {
+                success = success && catalog.addIndex(newTable.getTableName(), column, column);
+            }
             return success;
 
             //eg. alter table foo drop name;
@@ -275,10 +280,17 @@ public class DDLParser {
 
     private static boolean parseIndexClause(String stmt){
         //"create index myFooIndex on foo( bar );";
-        String index = stmt.split(" ")[2];
-        String indexString = stmt.split("on")[1].strip();
-        String tableName = indexString.split("\\(")[0];
-        String attrName = indexString.split("\\( ")[1].split("\\)")[0];
+        String[] words = stmt.split("\\s+");
+        int on = stmt.indexOf(" on ");
+        int open = stmt.indexOf('(', Math.max(on, 0));
+        int close = stmt.indexOf(')', Math.max(open, 0));
+        if (words.length < 4 || on == -1 || open == -1 || close == -1) {
+            System.err.println("Create index statement not properly structured: " + stmt);
+            return false;
+        }
+        String index = words[2];
+        String tableName = stmt.substring(on + 4, open).strip();
+        String attrName = stmt.substring(open + 1, close).strip();
         return catalog.addIndex(tableName, index, attrName);
     }
 
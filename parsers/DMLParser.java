@@ -4,10 +4,16 @@ import catalog.ACatalog;
 import common.Table;
 import common.Attribute;
 import conditionals.*;
+import indexing.BPlusTree;
+import operators.*;
 import storagemanager.AStorageManager;
 import storagemanager.RecordHelper;
+import storagemanager.StorageManager;
 
+import java.io.File;
 import java.util.*;
+import java.util.function.Function;
+import java.util.function.Predicate;
 
 /*
   Class for DML parser
@@ -26,25 +32,25 @@ public class DMLParser {
     private static final AStorageManager sm = AStorageManager.getStorageManager();
 
     // Correlate operators to a specific level of evaluation
-    private enum Operator {
+    private enum Precedence {
         COMPARISON(1), AND(2), OR(3);
         final int precedence;
 
-        Operator(int p) {
+        Precedence(int p) {
             precedence = p;
         }
     }
 
     // Define each parameter with a level of precendence for evaluation
-    private static final Map<String, Operator> operators = new HashMap<>() {{
-        put(">=", Operator.COMPARISON);
-        put("<=", Operator.COMPARISON);
-        put("<", Operator.COMPARISON);
-        put(">", Operator.COMPARISON);
-        put("=", Operator.COMPARISON);
-        put("!=", Operator.COMPARISON);
-        put("AND", Operator.AND);
-        put("OR", Operator.OR);
+    private static final Map<String, Precedence> operators = new HashMap<>() {{
+        put(">=", Precedence.COMPARISON);
+        put("<=", Precedence.COMPARISON);
+        put("<", Precedence.COMPARISON);
+        put(">", Precedence.COMPARISON);
+        put("=", Precedence.COMPARISON);
+        put("!=", Precedence.COMPARISON);
+        put("AND", Precedence.AND);
+        put("OR", Precedence.OR);
     }};
 
     private static boolean isHigherPrecedence(String op, String sub) {
@@ -295,8 +301,31 @@ public class DMLParser {
 
 
     private static ArrayList<ArrayList<Object>> parseWhereClause(Table table, String stmt) {
-        // TODO add in the implementation of querying with index
         //example: select * from foo where bar = 5;
+        // Comparisons of an indexed column to a value are looked up in the index, see OperatorNode
+        Node tree = parseWhereTree(table, stmt);
+        if (tree == null) {
+            return null;
+        }
+        // The tree is checked against each record once, so no record comes back twice
+        return tree.evaluate();
+    }
+
+    private static Node parseWhereTree(Table table, String stmt) {
+        return parseWhereTree(columnName -> new ColumnNode(columnName, table), table, stmt);
+    }
+
+    private static Node parseWhereTree(Relation relation, String stmt) {
+        return parseWhereTree(columnName -> new ColumnNode(columnName, relation), null, stmt);
+    }
+
+    /**
+     * @param columns makes the node of a column from its name
+     * @param table the stored table the where clause is on; null for rows held in memory
+     * @param stmt the where clause
+     * @return the root of the parsed where clause; null upon error
+     */
+    private static Node parseWhereTree(Function<String, ColumnNode> columns, Table table, String stmt) {
         // This function is a bit convoluted, but it works
         // Convert statement into a postfix string by order of precedence
         // Then convert back to a stack and pass to parseNode
@@ -330,49 +359,40 @@ public class DMLParser {
             tokenStack.push(str.strip());
         }
         // Parse node structure
-        Node tree = parseNode(table, tokenStack);
-        if (tree == null) {
-            return null;
-        }
-        // Return final arraylist of results
-        ArrayList<ArrayList<Object>> results = tree.evaluate();
-
-        Set<ArrayList<Object>> set = new HashSet<>(results);
-        results.clear();
-        results.addAll(set);
-        return results;
+        return parseNode(columns, table, tokenStack);
     }
 
-    private static Node parseNode(Table table, Stack<String> params) {
+    private static Node parseNode(Function<String, ColumnNode> columns, Table table, Stack<String> params) {
         if (params.peek().equalsIgnoreCase("or") || params.peek().equalsIgnoreCase("and")) {
             String conditional = params.pop();
             // Man... recursion is awesome, this saves so much work using a stack
             return new ConditionalNode(
-                    parseNode(table, params), // Left node
-                    parseNode(table, params),  // Right node
+                    parseNode(columns, table, params), // Left node
+                    parseNode(columns, table, params),  // Right node
                     conditional,              // Conditional
                     table);
         }
-        return parseSingleNode(table, params);
+        return parseSingleNode(columns, params);
     }
 
-    private static Node parseSingleNode(Table table, Stack<String> params) {
+    private static Node parseSingleNode(Function<String, ColumnNode> columns, Stack<String> params) {
         // Pop values off stack in order
         String operator = params.pop();
         String rightString = params.pop();
         String leftString = params.pop();
 
         // Left node is always a column
-        ColumnNode left = new ColumnNode(leftString, table);
+        ColumnNode left = columns.apply(leftString);
         if (left.getColumnIndex() == -1) {
             System.err.println("Column name does not exist in table");
             return null;
         }
         // Right node could be column or value, don't set yet
         Node right;
-        if (table.containsColumn(rightString.strip())) {
+        ColumnNode rightColumn = columns.apply(rightString.strip());
+        if (rightColumn.getColumnIndex() != -1) {
             // If the string is name of column, create column node
-            right = new ColumnNode(rightString, table);
+            right = rightColumn;
         } else {
             // If not a column, assume it is a value
             right = new ValueNode(rightString);
@@ -405,85 +425,278 @@ public class DMLParser {
     public static ResultSet parseSelectClause(String query) {
         //select * from foo;
         query = query.toLowerCase();
-        // Parse 'from' clause and get temporary return table;
-        Table temp = parseFromClause(query);
-        if (temp == null) {
+        // limit n [offset m] ends the query
+        int limit = -1;
+        int offset = 0;
+        if (query.contains(" limit ")) {
+            String[] limitParts = query.split(" limit ");
+            query = limitParts[0];
+            String[] counts = limitParts[1].strip().split("\\s+");
+            try {
+                limit = Integer.parseInt(counts[0]);
+                if (counts.length == 3 && counts[1].equals("offset")) {
+                    offset = Integer.parseInt(counts[2]);
+                } else if (counts.length != 1) {
+                    limit = -1;
+                }
+            } catch (NumberFormatException e) {
+                limit = -1;
+            }
+            if (limit < 0 || offset < 0) {
+                System.err.println("Invalid limit: " + limitParts[1].strip());
+                return null;
+            }
+        }
+        String where = null;
+        if (query.contains("where")) {
+            where = query.split("where")[1].split("groupby")[0].split("orderby")[0].strip();
+        }
+        String groupBy = query.contains("groupby") ? query.split("groupby")[1].split("orderby")[0].strip() : null;
+        String orderBy = query.contains("orderby") ? query.split("orderby")[1].strip() : null;
+        String selectStmt = query.split("select")[1].strip().split("from")[0].strip();
+        if (groupBy != null || selectStmt.contains("(")) {
+            return parseAggregateQuery(selectStmt, parseTableNames(query), where, groupBy, orderBy, offset, limit);
+        }
+        // The rows are pulled through a plan of operators one at a time as the result set is read
+        ArrayList<String> tableNames = parseTableNames(query);
+        Operator plan = parseFromClause(tableNames, where);
+        if (plan == null) {
             System.err.println("Error parsing 'from' clause of query");
             return null;
         }
-        ArrayList<ArrayList<Object>> rows;
-        if (query.toLowerCase().contains("where")) {
-            rows = parseWhereClause(temp, query.split("where")[1].strip());
-        } else {
-            rows = sm.getRecords(temp);
+        // Rows come out of the from clause in primary key order of the first table, so only an
+        // orderby on anything else has to sort them. Without a sort a limit stops the scan early.
+        boolean sorted = orderBy == null || (tableNames.size() == 1 && catalog.containsTable(tableNames.get(0))
+                && ordersByPrimaryKey((Table) catalog.getTable(tableNames.get(0)), orderBy));
+        plan = orderAndLimit(plan, sorted ? null : orderBy, offset, limit);
+        if (plan == null) {
+            return null;
         }
-        if (rows == null) {
-            System.err.println("Where clause could not be parsed");
+        if (!query.contains("*")) {
+            Relation schema = new Relation(plan.getAttributes(), new ArrayList<>());
+            ArrayList<Integer> selectIndexes = new ArrayList<>();
+            // The id column always comes first
+            selectIndexes.add(0);
+            for (String attr : selectStmt.split(",")) {
+                int columnIndex = schema.getColumnIndex(attr);
+                if (columnIndex == -1) {
+                    System.err.println("Could not select column");
+                    return null;
+                }
+                selectIndexes.add(columnIndex);
+            }
+            plan = new Project(plan, selectIndexes);
         }
-        rows = (ArrayList<ArrayList<Object>>) rows.clone();
-        ResultSet results;
-        ArrayList<Attribute> attributes = (ArrayList<Attribute>) temp.getAttributes().clone();
+        return new ResultSet(plan);
+    }
 
-        if (query.contains("*")) {
-            results = new ResultSet(attributes, rows);
-        } else {
-            String selectStmt = query.split("select")[1].strip().split("from")[0].strip();
-            String[] strSplit = selectStmt.split(",");
-            ArrayList<String> strList = new ArrayList<String>(
-                    Arrays.asList(strSplit));
-            ArrayList<Attribute> selectAttr = new ArrayList<>();
-            selectAttr.add(new Attribute("id", "integer"));
-            for (String attr : strList) {
-                String colName = RecordHelper.checkTableColumns(temp.getAttributes(), attr.strip());
-                if (colName.isEmpty()) {
-                    System.err.println("Could not select column");
+    /**
+     * Sorts rows on an orderby clause, then keeps the rows a limit clause asks for
+     * @param plan the rows
+     * @param orderBy the orderby clause; null to keep the rows in the order they are in
+     * @param offset how many rows to skip
+     * @param limit the most rows to keep; -1 for every one
+     * @return the plan of the sorted and limited rows; null upon error
+     */
+    private static Operator orderAndLimit(Operator plan, String orderBy, int offset, int limit) {
+        if (orderBy != null) {
+            // The rows before the offset are found and then skipped
+            int wanted = limit == -1 ? -1 : (int) Math.min(Integer.MAX_VALUE, (long) offset + limit);
+            plan = parseOrderByClause(orderBy, plan, wanted);
+            if (plan == null) {
+                return null;
+            }
+        }
+        return limit == -1 ? plan : new Limit(plan, offset, limit);
+    }
+
+    /**
+     * Runs a select with aggregate functions or a groupby clause, such as
+     * "select a, count(*), avg(b) from foo where c > 1 groupby a". The functions are count, sum,
+     * min, max and avg, and any column selected outside of one must be in the groupby clause.
+     *
+     * Rows are grouped in a hash table as they are pulled from the from clause, see Aggregate,
+     * so the records of a single table go straight from the scan into their groups. Without a where or groupby
+     * clause, count(*) is read from the page headers and min and max of an indexed column from
+     * the ends of its index.
+     * @param selectStmt the columns and functions selected
+     * @param tableNames the tables in the from clause
+     * @param where the where clause; null for none
+     * @param groupBy the columns to group on; null to put every row in one group
+     * @param orderBy the orderby clause; null for none
+     * @param offset how many rows to skip
+     * @param limit the most rows to return; -1 for every one
+     * @return an id column then each selected column or function, one row per group; null upon error
+     */
+    private static ResultSet parseAggregateQuery(String selectStmt, ArrayList<String> tableNames, String where,
+                                                 String groupBy, String orderBy, int offset, int limit) {
+        ArrayList<Table> tables = new ArrayList<>();
+        ArrayList<Attribute> attributes = parseFromAttributes(tableNames, tables);
+        Relation schema = new Relation(attributes, new ArrayList<>());
+        ArrayList<Integer> groupColumns = new ArrayList<>();
+        if (groupBy != null) {
+            for (String column : groupBy.split(",")) {
+                int columnIndex = schema.getColumnIndex(column);
+                if (columnIndex == -1) {
+                    System.err.println("Column name '" + column.strip() + "' not found to groupby");
                     return null;
                 }
-                selectAttr.add(temp.getAttrByName(colName));
+                groupColumns.add(columnIndex);
             }
-            ArrayList<Integer> selectIndexes = new ArrayList<>();
-            for (Attribute select : selectAttr) {
-                String selectColName = RecordHelper.checkTableColumns(temp.getAttributes(), select.getAttributeName());
-                if (temp.containsColumn(selectColName)) {
-                    selectIndexes.add(temp.getColumnIndex(selectColName));
+        }
+        ArrayList<Aggregate.Function> functions = new ArrayList<>();
+        ArrayList<Integer> columns = new ArrayList<>();
+        ArrayList<Attribute> selectAttributes = new ArrayList<>();
+        selectAttributes.add(new Attribute("id", "integer"));
+        // Where each selected item is in a row of groups, the group columns then the functions
+        ArrayList<Integer> selectIndexes = new ArrayList<>();
+        for (String item : selectStmt.split(",")) {
+            item = item.strip();
+            int open = item.indexOf('(');
+            if (open == -1) {
+                int columnIndex = schema.getColumnIndex(item);
+                if (columnIndex == -1 || !groupColumns.contains(columnIndex)) {
+                    System.err.println("Column '" + item + "' must be in the groupby clause");
+                    return null;
                 }
+                selectIndexes.add(groupColumns.indexOf(columnIndex));
+                selectAttributes.add(attributes.get(columnIndex));
+                continue;
             }
-
-            ArrayList<ArrayList<Object>> selectedRows = new ArrayList<>();
-            for (ArrayList<Object> row : rows) {
-                ArrayList<Object> newRow = new ArrayList<>();
-                for (int i : selectIndexes) {
-                    newRow.add(row.get(i));
+            Aggregate.Function function = Aggregate.Function.fromName(item.substring(0, open));
+            if (function == null || !item.endsWith(")")) {
+                System.err.println("Unknown aggregate function: " + item);
+                return null;
+            }
+            String argument = item.substring(open + 1, item.length() - 1).strip();
+            int columnIndex = -1;
+            String type = "integer";
+            if (!argument.equals("*") || function != Aggregate.Function.COUNT) {
+                columnIndex = schema.getColumnIndex(argument);
+                if (columnIndex == -1) {
+                    System.err.println("Column name '" + argument + "' not found for " + item);
+                    return null;
                 }
-                selectedRows.add(newRow);
+                type = attributes.get(columnIndex).getAttributeType();
+            }
+            boolean numeric = type.equalsIgnoreCase("integer") || type.equalsIgnoreCase("double");
+            if ((function == Aggregate.Function.SUM || function == Aggregate.Function.AVG) && !numeric) {
+                System.err.println("Cannot take " + item + " of a column of type " + type);
+                return null;
+            }
+            if (function == Aggregate.Function.COUNT) {
+                type = "integer";
+            } else if (function == Aggregate.Function.AVG) {
+                type = "double";
+            }
+            functions.add(function);
+            columns.add(columnIndex);
+            selectIndexes.add(groupColumns.size() + functions.size() - 1);
+            selectAttributes.add(new Attribute(item, type));
+        }
+
+        ArrayList<ArrayList<Object>> groups = null;
+        Table table = tables.size() == 1 && tableNames.size() == 1 ? tables.get(0) : null;
+        if (table != null && where == null && groupColumns.isEmpty()) {
+            groups = aggregateFromMetadata(table, functions, columns);
+        }
+        if (groups == null) {
+            Operator input = parseFromClause(tableNames, where);
+            if (input == null) {
+                System.err.println("Error parsing 'from' clause of query");
+                return null;
+            }
+            Aggregate aggregate = new Aggregate(groupColumns, functions, columns);
+            for (ArrayList<Object> row = input.next(); row != null; row = input.next()) {
+                aggregate.accept(row);
+            }
+            groups = aggregate.results();
+            if (groups == null) {
+                return null;
+            }
+        }
+
+        ArrayList<ArrayList<Object>> rows = new ArrayList<>(groups.size());
+        for (int i = 0; i < groups.size(); i++) {
+            ArrayList<Object> row = new ArrayList<>(selectIndexes.size() + 1);
+            row.add(i);
+            for (int selectIndex : selectIndexes) {
+                row.add(groups.get(i).get(selectIndex));
+            }
+            rows.add(row);
+        }
+        Operator plan = orderAndLimit(new ListScan(new Relation(selectAttributes, rows)), orderBy, offset, limit);
+        return plan == null ? null : new ResultSet(plan);
+    }
+
+    /**
+     * Answers aggregate functions over a whole table without decoding its records, count(*)
+     * from the record counts in the page headers and min and max of an indexed column from
+     * the first and last keys of its index
+     * @param table the table
+     * @param functions the functions
+     * @param columns for each function the index of its column, counting the id column; -1 for *
+     * @return the one row of results; null if a function needs the records
+     */
+    private static ArrayList<ArrayList<Object>> aggregateFromMetadata(Table table, List<Aggregate.Function> functions,
+                                                                      List<Integer> columns) {
+        for (int i = 0; i < functions.size(); i++) {
+            Aggregate.Function function = functions.get(i);
+            int column = columns.get(i);
+            boolean count = function == Aggregate.Function.COUNT && column == -1;
+            boolean extreme = (function == Aggregate.Function.MIN || function == Aggregate.Function.MAX)
+                    && column > 0 && table.hasIndex(table.getAttributes().get(column - 1));
+            if (!count && !extreme) {
+                return null;
             }
-            results = new ResultSet(selectAttr, selectedRows);
         }
-        if (!results.results().isEmpty()){
-            if (query.toLowerCase().contains("orderby")) {
-                results = parseOrderByClause(query.split("orderby")[1].strip(), results);
+        ArrayList<Object> row = new ArrayList<>(functions.size());
+        for (int i = 0; i < functions.size(); i++) {
+            if (functions.get(i) == Aggregate.Function.COUNT) {
+                int count = ((StorageManager) sm).countRecords(table);
+                if (count == -1) {
+                    return null;
+                }
+                row.add(count);
             } else {
-                results = parseOrderByClause("id", results);
+                BPlusTree tree = table.getIndex(table.getAttributes().get(columns.get(i) - 1));
+                if (tree == null) {
+                    return null;
+                }
+                row.add(functions.get(i) == Aggregate.Function.MIN ? tree.firstKey() : tree.lastKey());
             }
         }
-        sm.clearTableData(temp);
-        return results;
+        ArrayList<ArrayList<Object>> rows = new ArrayList<>(1);
+        rows.add(row);
+        return rows;
+    }
+
+
+    public static Operator parseFromClause(String query) {
+        if (!query.contains("from")) {
+            return null;
+        }
+        return parseFromClause(parseTableNames(query), null);
     }
 
-    public static Table parseFromClause(String query) {
-        boolean success = true;
+    /**
+     * @param query the select query
+     * @return the names of the tables in the from clause
+     */
+    private static ArrayList<String> parseTableNames(String query) {
+        ArrayList<String> tableNames = new ArrayList<>();
         if (query.contains("from")) {
             String fromString = query.split("from")[1].strip();
-            ArrayList<String> tableNames = new ArrayList<>();
             if (fromString.contains("where")) {
                 String tableNameList = fromString.split("where")[0];
                 if (tableNameList.contains(",")) {
                     tableNames.addAll(Arrays.asList(tableNameList.replace(" ","").split(",")));
                 } else {
-                    tableNames.add(tableNameList);
+                    tableNames.add(tableNameList.strip());
                 }
 
             } else {
+                fromString = fromString.split("groupby")[0].strip();
                 if(fromString.contains("orderby")) {
                     fromString = fromString.split("orderby")[0].strip();
                 }
@@ -493,94 +706,197 @@ public class DMLParser {
                     tableNames.add(fromString);
                 }
             }
-            ArrayList<Attribute> attributes = new ArrayList<Attribute>();
-            attributes.add(new Attribute("id","integer"));
-            ArrayList<ArrayList<Object>> rows = new ArrayList<>();
-            for (String tableName : tableNames) {
-                tableName = tableName.strip();
-                if (catalog.containsTable(tableName)) {
-                    Table temp = (Table) catalog.getTable(tableName);
-                    ArrayList<Attribute> tableAttr = temp.getAttributes();
-                    ArrayList<ArrayList<Object>> records = sm.getRecords(temp);
-                    for(Attribute attr: tableAttr){
-                        attributes.add(new Attribute(temp.getTableName()+"."+attr.getAttributeName(),attr.getAttributeType()));
-                    }
-                    if(rows.size() == 0){
-                        rows = records;
-                    }else {
-                        ArrayList<ArrayList<Object>>tempRows = (ArrayList<ArrayList<Object>>) rows.clone();
-                        for (ArrayList<Object> row : tempRows) {
-                            rows.remove(row);
-                            for (ArrayList<Object> combineRow : records) {
-                                ArrayList<Object> tempRow = (ArrayList<Object>) row.clone();
-                                tempRow.addAll(combineRow);
-                                success = success && rows.add(tempRow);
-                            }
-                        }
-                    }
-                    //TODO Replace return statement with cartesian product result
-                    // make sure to append table names to attributes and parse out in select func
-                    //return new ResultSet(temp.getAttributes(), sm.getRecords(temp));
+        }
+        return tableNames;
+    }
+
+    /**
+     * Plans the tables joined in the order of the from clause. A table with a column compared
+     * with = to a column of the tables before it is hash joined to them on those columns, any
+     * other table is joined as a cartesian product. The whole where clause is then checked on
+     * the joined rows.
+     *
+     * With one table the where clause is planned on the table itself instead, so it can use the
+     * table's indexes, and its rows are numbered after it.
+     * @param tableNames the tables in the from clause
+     * @param where the where clause; null for none
+     * @return the plan of the rows, each starting with an id column; null upon error
+     */
+    private static Operator parseFromClause(ArrayList<String> tableNames, String where) {
+        ArrayList<Table> tables = new ArrayList<>();
+        ArrayList<Attribute> attributes = parseFromAttributes(tableNames, tables);
+        if (tables.isEmpty()) {
+            return new ListScan(new Relation(attributes, new ArrayList<>()));
+        }
+        if (tables.size() == 1) {
+            Table table = tables.get(0);
+            Operator records = new TableScan(table);
+            if (where != null) {
+                Node tree = parseWhereTree(table, where);
+                records = tree == null ? null : tree.toOperator(table);
+                if (records == null) {
+                    System.err.println("Where clause could not be parsed");
+                    return null;
+                }
+            }
+            return new RowNumber(records);
+        }
+        Predicate<ArrayList<Object>> predicate = null;
+        ArrayList<OperatorNode> joins = new ArrayList<>();
+        if (where != null) {
+            Node tree = parseWhereTree(new Relation(attributes, new ArrayList<>()), where);
+            predicate = tree == null ? null : tree.compile();
+            if (predicate == null) {
+                System.err.println("Where clause could not be parsed");
+                return null;
+            }
+            findJoins(tree, joins);
+        }
+        // The columns of each table follow the id column and the columns of the tables before it
+        Operator rows = null;
+        int start = 1;
+        for (Table table : tables) {
+            Operator records = new TableScan(table);
+            int end = start + table.getAttributes().size();
+            if (rows == null) {
+                rows = records;
+            } else {
+                OperatorNode join = findJoin(joins, start, end);
+                if (join == null) {
+                    rows = new Join(rows, records);
                 } else {
-                    System.err.println("DB does not contain table: " + tableName);
+                    int leftColumn = ((ColumnNode) join.left).getColumnIndex();
+                    int rightColumn = ((ColumnNode) join.right).getColumnIndex();
+                    if (leftColumn >= start) {
+                        int swap = leftColumn;
+                        leftColumn = rightColumn;
+                        rightColumn = swap;
+                    }
+                    rows = new Join(rows, leftColumn - 1, records, rightColumn - start);
                 }
             }
-            Table temp = new Table("~",attributes,attributes.get(0));
-            if(rows.isEmpty()){
-                System.out.println("Table is empty");
-                return temp;
-            }
-            int rowIndex = 0;
-
-            for(ArrayList<Object> row : rows){
-                row = (ArrayList<Object>) row.clone();
-                row.add(0,rowIndex);
-                rowIndex += 1;
-                success = success && sm.insertRecord(temp, row);
-                if(!success){
-                    System.err.println("Error creating cartesian product row");
-                    break;
+            start = end;
+        }
+        // Rows are numbered in join order before the where clause is checked, as the clause can use the id
+        Operator numbered = new RowNumber(rows);
+        return predicate == null ? numbered : new Filter(numbered, predicate);
+    }
+
+    /**
+     * @param tableNames the tables in the from clause
+     * @param tables filled with the tables that are in the catalog
+     * @return the attributes of the joined rows, an id column then every column of every table
+     *         named <tablename>.<column_name>
+     */
+    private static ArrayList<Attribute> parseFromAttributes(ArrayList<String> tableNames, ArrayList<Table> tables) {
+        ArrayList<Attribute> attributes = new ArrayList<Attribute>();
+        attributes.add(new Attribute("id","integer"));
+        for (String tableName : tableNames) {
+            tableName = tableName.strip();
+            if (catalog.containsTable(tableName)) {
+                Table table = (Table) catalog.getTable(tableName);
+                tables.add(table);
+                for(Attribute attr: table.getAttributes()){
+                    attributes.add(new Attribute(table.getTableName()+"."+attr.getAttributeName(),attr.getAttributeType()));
                 }
+            } else {
+                System.err.println("DB does not contain table: " + tableName);
             }
-            if(!success){
-                System.err.println("Could not perform cartesian product");
-                return null;
-            }else{
-                return temp;
+        }
+        return attributes;
+    }
+
+    /**
+     * Finds the comparisons with = of two columns of the same type that every record of a
+     * where clause must pass, which are the ones not under an or
+     * @param node the where clause
+     * @param joins filled with the comparisons
+     */
+    private static void findJoins(Node node, ArrayList<OperatorNode> joins) {
+        if (node instanceof ConditionalNode && ((ConditionalNode) node).getConditional().equalsIgnoreCase("and")) {
+            findJoins(node.left, joins);
+            findJoins(node.right, joins);
+        } else if (node instanceof OperatorNode && ((OperatorNode) node).getOperator().equals("=")
+                && node.left instanceof ColumnNode && node.right instanceof ColumnNode) {
+            Attribute left = ((ColumnNode) node.left).getAttribute();
+            Attribute right = ((ColumnNode) node.right).getAttribute();
+            if (left.getAttributeType().equalsIgnoreCase(right.getAttributeType())) {
+                joins.add((OperatorNode) node);
+            }
+        }
+    }
+
+    /**
+     * @param joins the comparisons found by findJoins
+     * @param start the index of the first column of the table to join
+     * @param end the index after the last column of the table
+     * @return a comparison of a column of the table to a column before it; null if there is none
+     */
+    private static OperatorNode findJoin(ArrayList<OperatorNode> joins, int start, int end) {
+        for (OperatorNode join : joins) {
+            int left = ((ColumnNode) join.left).getColumnIndex();
+            int right = ((ColumnNode) join.right).getColumnIndex();
+            if ((left >= 1 && left < start && right >= start && right < end)
+                    || (right >= 1 && right < start && left >= start && left < end)) {
+                return join;
             }
         }
         return null;
     }
 
-    public static ResultSet parseOrderByClause(String query, ResultSet set){
-        String columnName = RecordHelper.checkTableColumns(set.attrs(),query);
-        int columnIndex = -1;
-        for(Attribute attr:set.attrs()){
-            if(attr.getAttributeName().equalsIgnoreCase(columnName)){
-                columnIndex = set.attrs().indexOf(attr);
-            }
-        }
-        if(columnIndex != -1) {
-            ArrayList<ArrayList<Object>> tableRecords = set.results();
-            ArrayList<ArrayList<Object>> finalList = new ArrayList<>();
-            while(!tableRecords.isEmpty()) {
-                ArrayList<Object> minRow = new ArrayList<Object>();
-                for (ArrayList<Object> row : tableRecords) {
-                    if(minRow.size() == 0){
-                        minRow = row;
-                        continue;
-                    }
-                    if(RecordHelper.lessThanEquals(row.get(columnIndex),minRow.get(columnIndex))){
-                        minRow = row;
-                    }
-                }
-                tableRecords.remove(minRow);
-                finalList.add(minRow);
+    /**
+     * @param table the only table of a query
+     * @param orderBy the orderby clause of the query; may be null
+     * @return true if the clause sorts on the primary key of the table alone and ascending, the
+     *         order records are kept in
+     */
+    private static boolean ordersByPrimaryKey(Table table, String orderBy) {
+        if (orderBy == null || orderBy.contains(",")) {
+            return false;
+        }
+        String[] parts = orderBy.strip().split("\\s+");
+        if (parts.length > 2 || (parts.length == 2 && !parts[1].equals("asc"))) {
+            return false;
+        }
+        String column = parts[0];
+        String prefix = table.getTableName().toLowerCase() + ".";
+        if (column.startsWith(prefix)) {
+            column = column.substring(prefix.length());
+        }
+        return column.equalsIgnoreCase(table.getPrimaryKey().getAttributeName());
+    }
+
+    /**
+     * Plans a sort of rows on the columns of an orderby clause, "orderby col1 [asc|desc], col2 ...".
+     * The rows are sorted in memory up to the sort.memory property in bytes and with an external
+     * merge sort past it, see Sort. If only the first rows are wanted they are picked out with a
+     * heap instead of sorting every row.
+     * @param query the columns to sort on
+     * @param input the rows to sort
+     * @param limit how many of the first rows are wanted; -1 for every one
+     * @return the plan of the sorted rows; null upon error
+     */
+    public static Operator parseOrderByClause(String query, Operator input, int limit){
+        Relation schema = new Relation(input.getAttributes(), new ArrayList<>());
+        ArrayList<Integer> columns = new ArrayList<>();
+        ArrayList<Boolean> descending = new ArrayList<>();
+        for (String key : query.split(",")) {
+            String[] parts = key.strip().split("\\s+");
+            if (parts.length > 2 || (parts.length == 2 && !parts[1].equals("asc") && !parts[1].equals("desc"))) {
+                System.err.println("Invalid orderby column: " + key.strip());
+                return null;
             }
-            return new ResultSet(set.attrs(),finalList);
-        }else{
-            System.err.println("Column name '" + columnName + "' not found in table to orderby");
-            return null;
+            int columnIndex = schema.getColumnIndex(parts[0]);
+            if (columnIndex == -1) {
+                System.err.println("Column name '" + parts[0] + "' not found in table to orderby");
+                return null;
+            }
+            columns.add(columnIndex);
+            descending.add(parts.length == 2 && parts[1].equals("desc"));
         }
+        String tempDirectory = System.getProperty("sort.tmpdir");
+        Sort sort = new Sort(columns, descending, Long.parseLong(System.getProperty("sort.memory", "67108864")),
+                tempDirectory == null ? null : new File(tempDirectory));
+        return new OrderBy(input, sort, limit);
     }
 }
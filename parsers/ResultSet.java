@@ -1,18 +1,86 @@
 package parsers;
 
 import common.Attribute;
+import operators.ListScan;
+import operators.Operator;
+import operators.Relation;
 
 import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
 
-public record ResultSet(ArrayList<Attribute> attrs, ArrayList<ArrayList<Object>> results) {
+/**
+ * The rows of a select, read one at a time from the plan of the query as the cursor moves
+ * through them. results() reads every row left into a list instead.
+ *
+ * The plan is closed once its rows run out; close() stops it early, removing the run files of
+ * a sort that was not read to the end.
+ */
+public class ResultSet implements Iterator<ArrayList<Object>> {
+
+    private final ArrayList<Attribute> attrs;
+    private final Operator plan;
+    private ArrayList<Object> next;
+    private ArrayList<ArrayList<Object>> results;
+
+    /**
+     * @param plan the plan of the query, which the rows are pulled from
+     */
+    public ResultSet(Operator plan) {
+        this.attrs = plan.getAttributes();
+        this.plan = plan;
+        this.next = plan.next();
+        if (next == null) {
+            plan.close();
+        }
+    }
+
+    /**
+     * @param attrs the attributes of the rows
+     * @param results rows already held in memory
+     */
+    public ResultSet(ArrayList<Attribute> attrs, ArrayList<ArrayList<Object>> results) {
+        this(new ListScan(new Relation(attrs, results)));
+    }
 
-    @Override
     public ArrayList<Attribute> attrs() {
         return attrs;
     }
 
     @Override
+    public boolean hasNext() {
+        return next != null;
+    }
+
+    @Override
+    public ArrayList<Object> next() {
+        if (next == null) {
+            throw new NoSuchElementException();
+        }
+        ArrayList<Object> row = next;
+        next = plan.next();
+        if (next == null) {
+            plan.close();
+        }
+        return row;
+    }
+
+    /**
+     * @return every row the cursor has not moved past, which is all of them if next() was never
+     *         called; the same list on every call
+     */
     public ArrayList<ArrayList<Object>> results() {
+        if (results == null) {
+            results = new ArrayList<>();
+            while (hasNext()) {
+                results.add(next());
+            }
+        }
         return results;
     }
+
+    public void close() {
+        next = null;
+        plan.close();
+    }
 }
@@ -10,71 +10,131 @@ import indexing.BPTreeNode;
 import indexing.BPlusTree;
 
 import java.io.*;
+import java.nio.ByteBuffer;
 import java.util.*;
 
 public class BufferManager {
 
-    private final ArrayList<Page> buffer = new ArrayList<>();
+    private final PageBuffer buffer;
     private final int pageLimit;
-    private final String pageFolder;
-    private final File pageDir;
-    private List<Integer> pageList = new ArrayList<Integer>();
+    private final String segmentFolder;
+    private final File segmentDir;
+    private final int frameSize;
+    // Every page read and write goes through this one buffer
+    private final ByteBuffer ioBuffer;
+    private final HashMap<String, SegmentFile> segments = new HashMap<>();
+    private final PageAllocator allocator;
+    private final FreeSpaceMap freeSpace;
+    private long cleanEvictions = 0;
+    private long dirtyEvictions = 0;
 
     public BufferManager() {
+        this(ReplacementPolicy.fromName(System.getProperty("buffer.policy", "LRU")));
+    }
+
+    public BufferManager(ReplacementPolicy policy) {
+        this.buffer = PageBuffer.create(policy);
         this.pageLimit = ACatalog.getCatalog().getPageBufferSize();
+        this.frameSize = ACatalog.getCatalog().getPageSize();
+        this.ioBuffer = ByteBuffer.allocate(frameSize);
         String location = ACatalog.getCatalog().getDbLocation();
-        this.pageFolder = location + "/pages";
-        this.pageDir = new File(pageFolder);
-        if (!pageDir.exists()) {
-            pageDir.mkdir();
-        }else{
-            String[] pathnames = pageDir.list();
-
-            // For each pathname in the pathnames array
-            for (String pathname : pathnames) {
-                // Print the names of files and directories
-                pageList.add(Integer.parseInt(pathname));
-            }
+        this.segmentFolder = location + "/segments";
+        this.segmentDir = new File(segmentFolder);
+        if (!segmentDir.exists()) {
+            segmentDir.mkdirs();
         }
+        // Page IDs are global and their allocator is saved with the catalog
+        this.allocator = ((Catalog) ACatalog.getCatalog()).getPageAllocator();
+        this.freeSpace = new FreeSpaceMap(location);
+        freeSpace.load(((Catalog) ACatalog.getCatalog()).getTables());
     }
 
     public ArrayList<Page> loadAllPages(Table table) {
         ArrayList<Page> pages = new ArrayList<>();
-        for (Integer fileName : table.getPageList()) {
-            Page page = findPageInBuffer(fileName);
-            if (page == null) {
-                page = new Page(table, pageDir.getPath() + "/" + fileName, fileName);
-                addPageToBuffer(page);
-                table.addPage(fileName);
-            }
-            pages.add(page);
+        for (Integer pageID : table.getPageList()) {
+            pages.add(loadPage(table, pageID));
         }
         return pages;
     }
 
     public Page loadPage(Table table, Integer pageID) {
-            Page page = findPageInBuffer(pageID);
-            if (page == null) {
-                page = new Page(table, pageDir.getPath() + "/" + pageID, pageID);
-                addPageToBuffer(page);
-                table.addPage(pageID);
-            }
+        Page page = findPageInBuffer(pageID);
+        if (page == null) {
+            page = readFromDisk(table, pageID);
+            addPageToBuffer(page);
+        }
         return page;
     }
 
-    public Page findPageInBuffer(Integer searchPage) {
-        for (Page page : buffer) {
-            if (Objects.equals(searchPage, page.getPageId())) {
+    /**
+     * Gets the segment file holding the pages of the provided table, opening it if needed
+     * @param table the table to get the segment for
+     * @return the segment; null if it could not be opened
+     */
+    private SegmentFile getSegment(Table table) {
+        SegmentFile segment = segments.get(table.getTableName());
+        if (segment == null) {
+            try {
+                segment = new SegmentFile(new File(segmentFolder + "/" + table.getTableName() + ".seg"), frameSize);
+                segments.put(table.getTableName(), segment);
+            } catch (IOException e) {
+                System.err.println("Error opening segment file for table: " + table.getTableName());
+                e.printStackTrace();
+            }
+        }
+        return segment;
+    }
+
+    private Page readFromDisk(Table table, Integer pageID) {
+        SegmentFile segment = getSegment(table);
+        try {
+            if (segment != null && segment.readPage(pageID, ioBuffer)) {
+                int[] slots = PageFormat.slots(pageID, ioBuffer);
+                Page page = new Page(table, pageID, PageFormat.read(table, ioBuffer, slots), slots);
+                page.markClean();
                 return page;
             }
+            System.err.println("Page " + pageID + " not found in segment for table " + table.getTableName());
+        } catch (IOException e) {
+            System.err.println("Error reading page from disk: " + pageID);
+            e.printStackTrace();
         }
-        return null;
+        return new Page(table, pageID);
+    }
+
+    public Page findPageInBuffer(Integer searchPage) {
+        return buffer.get(searchPage);
     }
 
     public void clearPageBuffer() {
         boolean success = true;
-        for (Page page : buffer) {
-            success = success && writeToDisk(page);
+        // Frames have a fixed size, so pages that grew past the page size are split first
+        boolean split = true;
+        while (split) {
+            split = false;
+            for (Page page : buffer.pages()) {
+                if (needsSplit(page)) {
+                    splitPage(page);
+                    split = true;
+                }
+            }
+        }
+        for (Page page : buffer.pages()) {
+            success = evict(page) && success;
+        }
+        for (SegmentFile segment : segments.values()) {
+            try {
+                segment.sync();
+            } catch (IOException e) {
+                success = false;
+                e.printStackTrace();
+            }
+        }
+        success = freeSpace.save() && success;
+        for (Table table : ((Catalog) ACatalog.getCatalog()).getTables()) {
+            for (BPlusTree tree : table.getOpenIndexes()) {
+                success = tree.flush() && success;
+            }
         }
         if (!success) {
             System.err.println("Error purging page buffer");
@@ -84,61 +144,146 @@ public class BufferManager {
 
     public void updateBuffer() {
         while (buffer.size() > pageLimit) {
-            Page p = buffer.get(0);
-            if (!p.hasSpace()) {
-                cutRecords(p.getTable(), p, p.getRecords().size() / 2);
+            Page p = buffer.victim();
+            if (needsSplit(p)) {
+                splitPage(p);
                 continue;
             }
-            buffer.remove(0);
-            writeToDisk(p);
+            buffer.remove(p.getPageId());
+            evict(p);
+        }
+    }
+
+    /**
+     * Brings the buffer back to its limit without splitting any page, so no record moves while a
+     * caller holds pointers to records. Pages too big to be written stay in the buffer, over the
+     * limit, until the next updateBuffer().
+     */
+    private void evictWithoutSplitting() {
+        ArrayList<Page> overfull = new ArrayList<>();
+        while (buffer.size() > pageLimit) {
+            Page p = buffer.victim();
+            buffer.remove(p.getPageId());
+            if (needsSplit(p)) {
+                overfull.add(p);
+            } else {
+                evict(p);
+            }
+        }
+        for (Page p : overfull) {
+            buffer.put(p);
+        }
+    }
+
+    /**
+     * @param page a page in the buffer
+     * @return true if the page is too big to be written and can be made smaller
+     */
+    private static boolean needsSplit(Page page) {
+        return !page.hasSpace() && (page.getRecords().size() > 1 || page.getEmptySlots() > 0);
+    }
+
+    /**
+     * Makes an overfull page fit again. Empty slots are dropped first. If that is not enough and
+     * the free space map shows the records at the end of the page fit on the next page of the
+     * table they are moved there, otherwise the page is cut in half.
+     * @param page the overfull page
+     */
+    private void splitPage(Page page) {
+        Table table = page.getTable();
+        if (page.getEmptySlots() > 0) {
+            // Every record of the page may change slot
+            updateIndexes(table, page, 0, page.getRecords().size(), false);
+            page.compactSlots();
+            updateIndexes(table, page, 0, page.getRecords().size(), true);
+            if (page.hasSpace() || page.getRecords().size() < 2) {
+                return;
+            }
+        }
+        ArrayList<Integer> pageList = table.getPageList();
+        int position = pageList.indexOf(page.getPageId());
+        if (position != -1 && position + 1 < pageList.size()) {
+            Integer nextId = pageList.get(position + 1);
+            int nextFree = getFreeBytes(table, nextId);
+            ArrayList<ArrayList<Object>> records = page.getRecords();
+            int overflow = -page.getFreeBytes();
+            int moveFrom = records.size();
+            int movedBytes = 0;
+            while (moveFrom > 1 && movedBytes <= overflow) {
+                moveFrom--;
+                movedBytes += page.getRecordBytes(records.get(moveFrom));
+            }
+            if (movedBytes > overflow && movedBytes < nextFree) {
+                Page next = loadPage(table, nextId);
+                int moved = records.size() - moveFrom;
+                updateIndexes(table, page, moveFrom, records.size(), false);
+                page.moveRecordsTo(moveFrom, next);
+                updateIndexes(table, next, 0, moved, true);
+                refreshFence(table, position, page);
+                refreshFence(table, position + 1, next);
+                return;
+            }
+        }
+        cutRecords(table, page, page.getRecords().size() / 2);
+    }
+
+    /**
+     * Gets how full a page is without loading it
+     * @param table the table the page belongs to
+     * @param pageID the ID of the page
+     * @return the free bytes of the page; -1 if the page is not in the buffer and not in the free space map
+     */
+    public int getFreeBytes(Table table, Integer pageID) {
+        Page page = buffer.get(pageID);
+        if (page != null) {
+            return page.getFreeBytes();
+        }
+        return freeSpace.getFreeBytes(table, pageID);
+    }
+
+    /**
+     * Writes the page back to disk if it was modified while in the buffer.
+     * Pages that were only read are dropped without any I/O.
+     * @param p the page leaving the buffer
+     * @return true if the page is safely on disk; false otherwise
+     */
+    private boolean evict(Page p) {
+        if (!p.isDirty()) {
+            cleanEvictions++;
+            return true;
         }
+        dirtyEvictions++;
+        return writeToDisk(p);
+    }
+
+    /**
+     * @return the number of pages that left the buffer without being written
+     */
+    public long getCleanEvictions() {
+        return cleanEvictions;
+    }
+
+    /**
+     * @return the number of pages that had to be written when leaving the buffer
+     */
+    public long getDirtyEvictions() {
+        return dirtyEvictions;
     }
 
     private boolean writeToDisk(Page p) {
-        if (!pageDir.exists()) {
-            pageDir.mkdirs();
+        SegmentFile segment = getSegment(p.getTable());
+        if (segment == null) {
+            return false;
         }
-        File finalPageFile = new File(pageFolder + "/" + p.getPageId());
         try {
-            if (!finalPageFile.exists()) {
-                finalPageFile.createNewFile();
-            }
-            FileOutputStream fileOutputStream = new FileOutputStream(finalPageFile);
-            DataOutputStream outputStream = new DataOutputStream(fileOutputStream);
-            outputStream.writeInt(p.getPageId());
-            outputStream.writeInt(p.getRecords().size());
-            for (int i = 0; i < p.getRecords().size(); i++) {
-                ArrayList<Object> records = p.getRecords().get(i);
-                RecordHelper.formatRecord(p.getTable(),records);
-                for (int j = 0; j < records.size(); j++) {
-                    Object record = records.get(j);
-                    String type = p.getTable().getAttributes().get(j).getAttributeType();
-                    if (type.equalsIgnoreCase("Integer")) {
-                        outputStream.writeInt((Integer) record);
-                    } else if (type.equalsIgnoreCase("Double")) {
-                        outputStream.writeDouble((Double) record);
-                    } else if (type.equalsIgnoreCase("Boolean")) {
-                        outputStream.writeBoolean((boolean) record);
-                    } else if (type.toLowerCase().startsWith("varchar")) {
-                        String outputString = (String) record;
-                        FileManager.writeChars(outputString, outputStream);
-                    } else if (type.toLowerCase().startsWith("char")) {
-                        int charLen = Integer.parseInt(type.substring(type.indexOf("(") + 1, type.indexOf(")")));
-                        String outputString = (String) record;
-                        outputStream.writeInt(charLen);
-                        for (int readIndex = 0; readIndex < charLen; readIndex++) {
-                            if (readIndex > outputString.length() - 1) {
-                                outputStream.writeChar('\t');
-                            } else {
-                                outputStream.writeChar(outputString.charAt(readIndex));
-                            }
-                        }
-                    }
-                }
-
+            // Values added by alter table are still strings until formatted here
+            for (ArrayList<Object> record : p.getRecords()) {
+                RecordHelper.formatRecord(p.getTable(), record);
             }
-            outputStream.close();
-            fileOutputStream.close();
+            PageFormat.write(p, ioBuffer);
+            segment.writePage(p.getPageId(), ioBuffer);
+            p.markClean();
+            freeSpace.update(p.getTable(), p.getPageId(), p.getFreeBytes());
             return true;
         } catch (IOException e) {
             System.err.println("Error writing page file to disk: " + p);
@@ -148,70 +293,97 @@ public class BufferManager {
     }
 
     private void addPageToBuffer(Page page) {
-        buffer.remove(page);
-        buffer.add(page);
-        pageList.add(page.getPageId());
+        buffer.put(page);
     }
 
     private Page addNewPage(Table table) {
         Page page = new Page(table, getAvailablePageID());
         table.addPage(page.getPageId());
         addPageToBuffer(page);
-        updateBuffer();
         return page;
     }
 
     public ArrayList<Object> getRecord(ITable itable, Object pkValue) {
         Table table = (Table) itable;
-        BPlusTree tree = table.getIndex(table.getPrimaryKey());
-        if(tree != null) {
-            ArrayList<RecordPointer> rpList = tree.search(pkValue);
-            if(rpList.size() > 0) {
-                RecordPointer rp = rpList.get(0);
-                Page p = loadPage(table,rp.page());
-                return p.getRecords().get(rp.index());
-            }else{
-                System.err.println("Error could not find page");
-                return null;
-            }
+        Page searchPage = searchForPage(table, pkValue);
+        ArrayList<Object> record = searchPage == null ? null : searchPage.getRecord(pkValue);
+        updateBuffer();
+        return record;
+    }
+
+    /**
+     * Finds the page that would hold the primary key using the fence keys of the table
+     * @param table the table to search
+     * @param pkValue the primary key to look for
+     * @return the position of the page in the page list; -1 if no page can hold the key
+     */
+    private int searchForPagePosition(Table table, Object pkValue) {
+        loadMissingFences(table);
+        int position = table.findPagePosition(pkValue);
+        if (position == table.getPageList().size()
+                || RecordHelper.lessThan(pkValue, table.getPageMinKey(position))) {
+            return -1;
         }
-        int primaryKeyIndex = table.getAttributes().indexOf(table.getPrimaryKey());
-        Page searchPage = searchForPage(itable, pkValue);
-        if (searchPage != null) {
-            for (int i = 0; i < searchPage.getRecords().size(); i++) {
-                ArrayList<Object> record = searchPage.getRecords().get(i);
-                Object primaryKeyValue = record.get(primaryKeyIndex);
-                if (primaryKeyValue != null && primaryKeyValue.equals(pkValue)) {
-                    updateBuffer();
-                    return record;
-                }
-            }
+        return position;
+    }
+
+    private Page searchForPage(Table table, Object pkValue) {
+        int position = searchForPagePosition(table, pkValue);
+        if (position == -1) {
+            return null;
         }
-        updateBuffer();
-        return null;
+        return loadPage(table, table.getPageList().get(position));
     }
 
-    private Page searchForPage(ITable itable, Object pkValue) {
-        Table table = (Table) itable;
-        BPlusTree tree = table.getIndex(table.getPrimaryKey());
-        if(tree != null){
-            ArrayList<RecordPointer> rpList = tree.search(pkValue);
-            RecordPointer rp = rpList.get(0);
-            return loadPage(table,rp.page());
+    /**
+     * Sets the fence keys of a page from its first and last record
+     * @param table the table the page belongs to
+     * @param position the position of the page in the page list
+     * @param page the page
+     * @return true if the fences were set; false if the page is empty
+     */
+    private boolean refreshFence(Table table, int position, Page page) {
+        ArrayList<ArrayList<Object>> records = page.getRecords();
+        if (records.isEmpty()) {
+            return false;
         }
         int primaryKeyIndex = table.getPrimaryKeyIndex();
-        for (Page page : loadAllPages(table)) {
-            if (page.getRecords().size() > 0) {
-                for (int i = 0; i < page.getRecords().size(); i++) {
-                    ArrayList<Object> record = page.getRecords().get(i);
-                    Object primaryKeyValue = record.get(primaryKeyIndex);
-                    if (primaryKeyValue != null && primaryKeyValue.equals(pkValue)) {
-                        return page;
-                    }
+        table.setPageFence(position, records.get(0).get(primaryKeyIndex),
+                records.get(records.size() - 1).get(primaryKeyIndex));
+        return true;
+    }
+
+    /**
+     * Tables saved before fence keys existed have none, their pages are read once to find them.
+     * Pages that turn out to be empty are dropped.
+     * @param table the table to check
+     */
+    private void loadMissingFences(Table table) {
+        if (!table.hasMissingFences()) {
+            return;
+        }
+        ArrayList<Integer> pageList = table.getPageList();
+        for (int position = pageList.size() - 1; position >= 0; position--) {
+            if (table.getPageMaxKey(position) == null) {
+                Page page = loadPage(table, pageList.get(position));
+                if (!refreshFence(table, position, page)) {
+                    dropEmptyPage(table, position, page);
                 }
             }
         }
-        return null;
+        updateBuffer();
+    }
+
+    /**
+     * Removes a page that no longer holds any records from the table
+     * @param table the table the page belongs to
+     * @param position the position of the page in the page list
+     * @param page the empty page
+     */
+    private void dropEmptyPage(Table table, int position, Page page) {
+        removePageFromBuffer(page);
+        table.removePage(position);
+        freePage(table, page.getPageId());
     }
 
     public ArrayList<ArrayList<Object>> getAllRecords(ITable table) {
@@ -224,26 +396,273 @@ public class BufferManager {
         return allRecords;
     }
 
-    public boolean populateIndex(ITable itable, String indexName){
+    /**
+     * Reads the records of a table in primary key order, a page at a time. Each page is loaded
+     * only once every record of the page before it has been read, so a reader that stops early
+     * never loads the pages after it.
+     *
+     * The records of a page are copied out when it is loaded and the buffer is brought back to
+     * its limit right after, so a scan holds one page more than the buffer at most. Evicting can
+     * split pages and move records between them, so the next page is found from the fence keys
+     * and the last primary key read rather than from its position in the page list.
+     * @param itable the table to read
+     * @return the records
+     */
+    public Iterator<ArrayList<Object>> scan(ITable itable) {
+        Table table = (Table) itable;
+        int primaryKeyIndex = table.getPrimaryKeyIndex();
+        return new Iterator<ArrayList<Object>>() {
+            // Primary key of the last record copied out; null before the first page
+            private Object lastKey = null;
+            private boolean done = false;
+            private Iterator<ArrayList<Object>> page = Collections.emptyIterator();
+
+            @Override
+            public boolean hasNext() {
+                while (!page.hasNext() && !done) {
+                    page = nextPage().iterator();
+                }
+                return page.hasNext();
+            }
+
+            /**
+             * @return the records after the last key read from the next page that has any
+             */
+            private ArrayList<ArrayList<Object>> nextPage() {
+                loadMissingFences(table);
+                ArrayList<Integer> pageList = table.getPageList();
+                int position = 0;
+                if (lastKey != null) {
+                    position = table.findPagePosition(lastKey);
+                    // The page ending at the last key read has nothing left to read
+                    if (position < pageList.size()
+                            && RecordHelper.compare(table.getPageMaxKey(position), lastKey) == 0) {
+                        position++;
+                    }
+                }
+                if (position >= pageList.size()) {
+                    done = true;
+                    return new ArrayList<>();
+                }
+                Page next = loadPage(table, pageList.get(position));
+                int start = 0;
+                if (lastKey != null) {
+                    start = next.findRecord(lastKey);
+                    start = start >= 0 ? start + 1 : -start - 1;
+                }
+                ArrayList<ArrayList<Object>> records = next.getRecords();
+                ArrayList<ArrayList<Object>> copied = new ArrayList<>(records.subList(start, records.size()));
+                if (copied.isEmpty()) {
+                    // Fences are kept up to date, this only keeps a stale one from stopping the scan
+                    lastKey = table.getPageMaxKey(position);
+                } else {
+                    lastKey = copied.get(copied.size() - 1).get(primaryKeyIndex);
+                }
+                updateBuffer();
+                return copied;
+            }
+
+            @Override
+            public ArrayList<Object> next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                return page.next();
+            }
+        };
+    }
+
+    /**
+     * Counts the records of a table. Pages in the buffer are counted as they are, the rest from
+     * the record count in their header without decoding their records or buffering them.
+     * @param itable the table to count
+     * @return the number of records; -1 if a page could not be read
+     */
+    public int countRecords(ITable itable) {
+        Table table = (Table) itable;
+        int count = 0;
+        for (Integer pageID : table.getPageList()) {
+            Page page = findPageInBuffer(pageID);
+            if (page != null) {
+                count += page.getRecords().size();
+                continue;
+            }
+            SegmentFile segment = getSegment(table);
+            try {
+                if (segment == null || !segment.readPage(pageID, ioBuffer)) {
+                    System.err.println("Page " + pageID + " not found in segment for table " + table.getTableName());
+                    return -1;
+                }
+                count += PageFormat.recordCount(pageID, ioBuffer);
+            } catch (IOException e) {
+                System.err.println("Error reading page from disk: " + pageID);
+                e.printStackTrace();
+                return -1;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Gets the records at a list of record pointers, as found in an index. Each page is loaded
+     * once for the run of pointers into it, so pointers sorted in page order read every page
+     * they need only once. The records of a page are copied out before the next page is loaded
+     * and the buffer evicts between pages, so a wide lookup keeps to the buffer limit.
+     * @param itable the table the records are in
+     * @param pointers the pointers to the records
+     * @return the records, the runs of pointers into each page in the order of the pointers and
+     * the records of a run in the order they are on the page; null if a pointer is not in the table
+     */
+    public ArrayList<ArrayList<Object>> getRecords(ITable itable, List<RecordPointer> pointers) {
+        Table table = (Table) itable;
+        ArrayList<ArrayList<Object>> records = new ArrayList<>(pointers.size());
+        HashSet<Integer> tablePages = new HashSet<>(table.getPageList());
+        // Pages are evicted between runs, but none is split until every record is found, a split
+        // would move the records the pointers point at
+        int start = 0;
+        while (start < pointers.size()) {
+            int pageID = pointers.get(start).page();
+            int end = start + 1;
+            while (end < pointers.size() && pointers.get(end).page() == pageID) {
+                end++;
+            }
+            if (!tablePages.contains(pageID)) {
+                System.err.println("Page " + pageID + " is not in table " + table.getTableName());
+                updateBuffer();
+                return null;
+            }
+            Page page = loadPage(table, pageID);
+            // Slots are not in primary key order, the records of the page are put back in it
+            int[] positions = new int[end - start];
+            for (int i = start; i < end; i++) {
+                positions[i - start] = page.findSlot(pointers.get(i).index());
+                if (positions[i - start] == -1) {
+                    System.err.println("Record " + pointers.get(i).index() + " is not in page " + pageID);
+                    updateBuffer();
+                    return null;
+                }
+            }
+            Arrays.sort(positions);
+            for (int position : positions) {
+                records.add(page.getRecords().get(position));
+            }
+            evictWithoutSplitting();
+            start = end;
+        }
+        updateBuffer();
+        return records;
+    }
+
+    /**
+     * Fills a new, empty index with every record of its table. The (key, pointer) pairs of every
+     * page are gathered and sorted, and the tree is built bottom up from them instead of taking
+     * one insert per record.
+     * @param itable the table the index is on
+     * @param indexName the name of the indexed column
+     * @param fillFactor how full to make each node, between 0 and 1
+     * @param parallelSort true to sort the pairs on every core
+     * @return true if successful; false otherwise
+     */
+    public boolean populateIndex(ITable itable, String indexName, double fillFactor, boolean parallelSort){
         Table table = (Table) itable;
         Attribute indexCol = table.getAttrByName(indexName);
-        boolean success = true;
-        if(indexCol != null && table.hasIndex(indexCol)){
-            BPlusTree tree = table.getIndex(table.getPrimaryKey());
-            for(Integer page : table.getPageList()){
-                Page p = loadPage(table, page);
-                ArrayList<ArrayList<Object>> pageRecords = p.getRecords();
-                for(int i = 0; i < pageRecords.size(); i++) {
-                    ArrayList<Object> row = pageRecords.get(i);
-                    Object value = row.get(table.getColumnIndex(indexName));
-                    RecordPointer rp = new RecordPointer(page,i);
-                    success = success && tree.insertRecordPointer(rp,value);
+        if(indexCol == null || !table.hasIndex(indexCol)){
+            System.err.println("No index to populate on: " + indexName);
+            return false;
+        }
+        BPlusTree tree = table.getIndex(indexCol);
+        int columnIndex = table.getColumnIndex(indexCol.getAttributeName());
+        // Pages are read in page ID order and their records in slot order, so the pointers are
+        // gathered already sorted
+        ArrayList<Integer> pageIDs = new ArrayList<>(table.getPageList());
+        Collections.sort(pageIDs);
+        ArrayList<Object> keys = new ArrayList<>();
+        ArrayList<RecordPointer> pointers = new ArrayList<>();
+        // Pages are evicted as the walk goes, but none is split until the tree is built, a split
+        // would move the gathered records
+        for(Integer pageID : pageIDs){
+            Page page = loadPage(table, pageID);
+            ArrayList<ArrayList<Object>> pageRecords = page.getRecords();
+            for(int slot = 0; slot < page.getSlotCount(); slot++) {
+                int position = page.findSlot(slot);
+                if(position != -1) {
+                    keys.add(pageRecords.get(position).get(columnIndex));
+                    pointers.add(new RecordPointer(pageID, slot));
                 }
             }
+            evictWithoutSplitting();
         }
+        int[] order = indexOrder(keys, indexCol.getAttributeType().equalsIgnoreCase("integer"), parallelSort);
+        ArrayList<Object> sortedKeys = new ArrayList<>(order.length);
+        ArrayList<RecordPointer> sortedPointers = new ArrayList<>(order.length);
+        for(int position : order){
+            sortedKeys.add(keys.get(position));
+            sortedPointers.add(pointers.get(position));
+        }
+        boolean success;
+        if(tree.isEmpty()){
+            success = tree.bulkLoad(sortedKeys, sortedPointers, fillFactor);
+        }else{
+            success = true;
+            for(int i = 0; i < order.length; i++){
+                success = tree.insertRecordPointer(sortedPointers.get(i), sortedKeys.get(i)) && success;
+            }
+        }
+        updateBuffer();
         return success;
     }
 
+    /**
+     * Sorts keys into index order. Equal keys keep the order they came in, which is the order
+     * of their pointers.
+     * @param keys the keys to sort
+     * @param intKeys true if every key is an Integer or null
+     * @param parallel true to sort on every core
+     * @return the positions of the keys in sorted order
+     */
+    private static int[] indexOrder(ArrayList<Object> keys, boolean intKeys, boolean parallel){
+        int[] order = new int[keys.size()];
+        if(intKeys){
+            // Integer keys are sorted as longs, the key in the high half and its position in the
+            // low half. Nulls sort first and do not need sorting.
+            long[] packed = new long[keys.size()];
+            int nulls = 0;
+            int count = 0;
+            for(int i = 0; i < keys.size(); i++){
+                Object key = keys.get(i);
+                if(key == null){
+                    order[nulls++] = i;
+                }else{
+                    packed[count++] = ((long) (Integer) key << 32) | i;
+                }
+            }
+            if(parallel){
+                Arrays.parallelSort(packed, 0, count);
+            }else{
+                Arrays.sort(packed, 0, count);
+            }
+            for(int i = 0; i < count; i++){
+                order[nulls + i] = (int) packed[i];
+            }
+            return order;
+        }
+        Integer[] boxed = new Integer[keys.size()];
+        for(int i = 0; i < boxed.length; i++){
+            boxed[i] = i;
+        }
+        // Both sorts are stable, so equal keys stay in pointer order
+        Comparator<Integer> byKey = (a, b) -> RecordHelper.compare(keys.get(a), keys.get(b));
+        if(parallel){
+            Arrays.parallelSort(boxed, byKey);
+        }else{
+            Arrays.sort(boxed, byKey);
+        }
+        for(int i = 0; i < boxed.length; i++){
+            order[i] = boxed[i];
+        }
+        return order;
+    }
+
     public boolean insertRecord(ITable itable, ArrayList<Object> record) {
         Table table = (Table) itable;
         BPlusTree tree = table.getIndex(table.getPrimaryKey());
@@ -252,94 +671,224 @@ public class BufferManager {
             return false;
         }
         if(tree != null){
-            if(tree.search(record.get(table.getPrimaryKeyIndex())) != null){
+            ArrayList<RecordPointer> existing = tree.search(record.get(table.getPrimaryKeyIndex()));
+            if(existing != null && !existing.isEmpty()){
                 System.err.println("Error: Primary key already exists in column");
                 return false;
             }
         }
-        ArrayList<Page> tablePages = loadAllPages(table);
         if (record == null) {
             System.err.println("Record cannot be null.");
             return false;
         }
-
-        if (tablePages.size() == 0) {
-            Page p = addNewPage(table);
-            return p.addRecord(table, record, 0);
-        }
-
         if (!table.checkNonNullAttributes(record)) {
             System.err.println("Record contains null values in a non-null column.");
             return false;
         }
-        int canAdd = -2;
-        for (Page page : tablePages) {
-            canAdd = canAddRecord(table, page, record);
-            if (canAdd > -1) {
-                if (!page.hasSpace()) {
-                    page = cutRecords(table, page, canAdd);
+        loadMissingFences(table);
+        Object pkValue = record.get(table.getPrimaryKeyIndex());
+        ArrayList<Integer> pageList = table.getPageList();
+        int position = table.findPagePosition(pkValue);
+        Page page;
+        int index;
+        if (pageList.size() == 0) {
+            page = addNewPage(table);
+            position = 0;
+            index = 0;
+        } else if (position == pageList.size()) {
+            // Larger than every key in the table, goes at the end of the last page
+            position--;
+            page = loadPage(table, pageList.get(position));
+            if (page.getRecords().size() > 0 && page.getRecordBytes(record) >= page.getFreeBytes()) {
+                // The last page is full, start a new one instead of splitting it in half later
+                page = addNewPage(table);
+                position++;
+            }
+            index = page.getRecords().size();
+        } else {
+            page = loadPage(table, pageList.get(position));
+            index = page.findRecord(pkValue);
+            if (index >= 0) {
+                System.err.println("Error: Primary key already exists in table");
+                updateBuffer();
+                return false;
+            }
+            index = -index - 1;
+            if (!page.hasSpace() && page.getRecords().size() > 1) {
+                int cutIndex = page.getRecords().size() / 2;
+                page = cutRecords(table, page, cutIndex);
+                if (index > cutIndex) {
+                    position++;
+                    index -= cutIndex;
+                    page = loadPage(table, pageList.get(position));
                 }
-                return page.addRecord(table, record, canAdd) &&
-                        (tree == null || tree.insertRecordPointer(
-                                new RecordPointer(page.getPageId(),canAdd),
-                                record.get(table.getPrimaryKeyIndex()))
-                        );
             }
         }
-        if (canAdd == -1) {
-            Page page = tablePages.get(tablePages.size() - 1);
-            updateBuffer();
-            return page.addRecord(table, record, page.getRecords().size()) &&
-                    (tree == null || tree.insertRecordPointer(
-                            new RecordPointer(page.getRecords().size(), canAdd),
-                            record.get(table.getPrimaryKeyIndex())));
-        } else {
-            System.err.println("error");
-            return false;
+        // The other records of the page keep their slots, only the new record is added to the indexes
+        boolean added = page.addRecord(table, record, index);
+        if (added) {
+            added = updateIndexes(table, page, index, index + 1, true);
         }
+        if (!refreshFence(table, position, page)) {
+            dropEmptyPage(table, position, page);
+        }
+        // Evict only after the add, the page may be the one that gets written out
+        updateBuffer();
+        return added;
     }
 
-    private int canAddRecord(Table table, Page page, ArrayList<Object> record) {
-        Object recordVal = record.get(table.getPrimaryKeyIndex());
-        if(page.getRecords().size() == 0){
-            return 0;
+    /**
+     * Inserts many records at once. The records are sorted by primary key. Those above every key
+     * already in the table are packed into new pages filled up to the fill factor. The new pages are
+     * written out one after another without going through the page buffer. Records that fall
+     * between existing keys are inserted one at a time.
+     * @param itable the table to insert into
+     * @param records the records to insert, in any order
+     * @param fillFactor how full to make each new page, between 0 and 1
+     * @return true if every record was inserted; false if any was rejected
+     */
+    public boolean insertRecords(ITable itable, Iterable<ArrayList<Object>> records, double fillFactor) {
+        Table table = (Table) itable;
+        if (fillFactor <= 0 || fillFactor > 1) {
+            System.err.println("Fill factor must be above 0 and at most 1: " + fillFactor);
+            return false;
+        }
+        boolean success = true;
+        ArrayList<ArrayList<Object>> sorted = new ArrayList<>();
+        for (ArrayList<Object> record : records) {
+            if (record == null || RecordHelper.formatRecord(table, record) == null
+                    || !table.checkNonNullAttributes(record)) {
+                System.err.println("Record improperly formatted: " + record + " for attributes: " + table.getAttributes());
+                success = false;
+                continue;
+            }
+            sorted.add(record);
         }
-        if (page.getRecords().size() == 1) {
-            Object compareVal = page.getRecords().get(0).get(table.getPrimaryKeyIndex());
-            if (RecordHelper.equals(compareVal, recordVal)) {
-                return -2;
+        int primaryKeyIndex = table.getPrimaryKeyIndex();
+        sorted.sort((r1, r2) -> RecordHelper.compare(r1.get(primaryKeyIndex), r2.get(primaryKeyIndex)));
+
+        loadMissingFences(table);
+        ArrayList<Integer> pageList = table.getPageList();
+        Object tableMaxKey = pageList.isEmpty() ? null : table.getPageMaxKey(pageList.size() - 1);
+        ArrayList<ArrayList<Object>> appended = new ArrayList<>();
+        Object previousKey = null;
+        for (ArrayList<Object> record : sorted) {
+            Object pkValue = record.get(primaryKeyIndex);
+            if (previousKey != null && RecordHelper.compare(previousKey, pkValue) == 0) {
+                System.err.println("Error: Primary key already exists in table");
+                success = false;
+                continue;
             }
-            if (RecordHelper.compareObjects(recordVal, compareVal)) {
-                return 0;
+            previousKey = pkValue;
+            if (tableMaxKey != null && RecordHelper.compare(pkValue, tableMaxKey) <= 0) {
+                success = insertRecord(table, record) && success;
             } else {
-                return 1;
+                appended.add(record);
+            }
+        }
+        success = appendPages(table, appended, fillFactor) && success;
+        updateBuffer();
+        return success;
+    }
+
+    /**
+     * Packs sorted records into new pages at the end of the table and writes them straight to disk
+     * @param table the table to add the pages to
+     * @param records records sorted by primary key, all above the keys already in the table
+     * @param fillFactor how full to make each page
+     * @return true if every page was written; false otherwise
+     */
+    private boolean appendPages(Table table, ArrayList<ArrayList<Object>> records, double fillFactor) {
+        if (records.isEmpty()) {
+            return true;
+        }
+        byte[] types = PageFormat.columnTypes(table);
+        int limit = Math.min(frameSize - 1, (int) (frameSize * fillFactor));
+        // Index of the first record of every page, plus the end of the list
+        ArrayList<Integer> pageStarts = new ArrayList<>();
+        int usedBytes = PageFormat.HEADER_SIZE;
+        for (int i = 0; i < records.size(); i++) {
+            int recordBytes = PageFormat.recordSize(types, records.get(i));
+            if (pageStarts.isEmpty() || usedBytes + recordBytes > limit) {
+                pageStarts.add(i);
+                usedBytes = PageFormat.HEADER_SIZE;
             }
+            usedBytes += recordBytes;
+        }
+        pageStarts.add(records.size());
+
+        int[] pageIds = allocator.allocate(pageStarts.size() - 1);
+        boolean success = true;
+        for (int p = 0; p < pageIds.length; p++) {
+            ArrayList<ArrayList<Object>> pageRecords =
+                    new ArrayList<>(records.subList(pageStarts.get(p), pageStarts.get(p + 1)));
+            Page page = new Page(table, pageIds[p], pageRecords);
+            table.addPage(page.getPageId());
+            refreshFence(table, table.getPageList().size() - 1, page);
+            success = writeToDisk(page) && success;
         }
-        for (int i = 1; i < page.getRecords().size(); i++) {
-            Object previousVal = page.getRecords().get(i - 1).get(table.getPrimaryKeyIndex());
-            Object compareVal = page.getRecords().get(i).get(table.getPrimaryKeyIndex());
-            if (RecordHelper.equals(compareVal, recordVal)
-                    || RecordHelper.equals(previousVal, recordVal)) {
-                return -2;
+        for (BPlusTree tree : getIndexes(table)) {
+            int columnIndex = table.getColumnIndex(tree.getColumnName());
+            if (columnIndex == -1) {
+                continue;
             }
-            if (RecordHelper.compareObjects(previousVal, recordVal)
-                    && RecordHelper.compareObjects(recordVal, compareVal)) {
-                return i;
+            ArrayList<Object> treeKeys = new ArrayList<>();
+            ArrayList<RecordPointer> treePointers = new ArrayList<>();
+            for (int p = 0; p < pageIds.length; p++) {
+                List<ArrayList<Object>> pageRecords = records.subList(pageStarts.get(p), pageStarts.get(p + 1));
+                for (int i = 0; i < pageRecords.size(); i++) {
+                    treeKeys.add(pageRecords.get(i).get(columnIndex));
+                    treePointers.add(new RecordPointer(pageIds[p], i));
+                }
             }
-            if (i == 1 && RecordHelper.compareObjects(recordVal, previousVal)) {
-                return 0;
+            // The records are in primary key order, so only a primary key index can be loaded bottom up
+            if (tree.isEmpty() && columnIndex == table.getPrimaryKeyIndex()) {
+                success = tree.bulkLoad(treeKeys, treePointers, fillFactor) && success;
+            } else {
+                for (int i = 0; i < treeKeys.size(); i++) {
+                    success = tree.insertRecordPointer(treePointers.get(i), treeKeys.get(i)) && success;
+                }
             }
         }
-        return -1;
+        return success;
     }
 
-
-    public boolean updateRecord(ITable table, ArrayList<Object> oldRecord, ArrayList<Object> newRecord) {
-        Object primaryKey = oldRecord.get(((Table) table).getPrimaryKeyIndex());
+    public boolean updateRecord(ITable itable, ArrayList<Object> oldRecord, ArrayList<Object> newRecord) {
+        Table table = (Table) itable;
+        Object primaryKey = oldRecord.get(table.getPrimaryKeyIndex());
+        if (RecordHelper.formatRecord(table, newRecord) == null) {
+            System.err.println("Record incorrectly formatted, attributes did not match");
+            return false;
+        }
+        Object newPrimaryKey = newRecord.get(table.getPrimaryKeyIndex());
+        if (!RecordHelper.equals(primaryKey, newPrimaryKey)) {
+            // Pages are sorted by primary key, so a record with a new key moves to wherever that key belongs
+            if (getRecord(table, newPrimaryKey) != null) {
+                System.err.println("Error: Primary key already exists in table");
+                return false;
+            }
+            if (!deleteRecord(table, primaryKey)) {
+                System.err.println("Could not find page for update");
+                return false;
+            }
+            if (insertRecord(table, newRecord)) {
+                return true;
+            }
+            insertRecord(table, oldRecord);
+            return false;
+        }
         Page updatePage = searchForPage(table, primaryKey);
         if (updatePage != null) {
+            int index = updatePage.findRecord(primaryKey);
+            if (index >= 0) {
+                updateIndexes(table, updatePage, index, index + 1, false);
+            }
+            boolean updated = updatePage.updateRecord(table, primaryKey, newRecord);
+            if (index >= 0) {
+                updated = updateIndexes(table, updatePage, index, index + 1, true) && updated;
+            }
             updateBuffer();
-            return updatePage.updateRecord(table, primaryKey, newRecord);
+            return updated;
         }
         System.err.println("Could not find page for update");
         updateBuffer();
@@ -348,78 +897,144 @@ public class BufferManager {
 
     public boolean deleteRecord(ITable itable, Object pkValue) {
         Table table = (Table) itable;
-        Page updatePage = searchForPage(table, pkValue);
-
-        if (updatePage != null) {
-            updatePage.deleteRecord(table, pkValue);
-            updateBuffer();
-            return true;
+        int position = searchForPagePosition(table, pkValue);
+        if (position != -1) {
+            Page updatePage = loadPage(table, table.getPageList().get(position));
+            int index = updatePage.findRecord(pkValue);
+            if (index >= 0) {
+                updateIndexes(table, updatePage, index, index + 1, false);
+                updatePage.deleteRecord(table, pkValue);
+                if (updatePage.getRecords().isEmpty()) {
+                    dropEmptyPage(table, position, updatePage);
+                }
+                updateBuffer();
+                return true;
+            }
         }
+        updateBuffer();
         return false;
     }
 
+    /**
+     * Cuts a page in two. The records before the cut stay on the page in their slots, the rest
+     * move to a new page after it and only their index entries are rewritten.
+     * @param itable the table the page belongs to
+     * @param page the page to cut
+     * @param cutIndex the index of the first record to move
+     * @return the page, now holding the records before the cut
+     */
     public Page cutRecords(ITable itable, Page page, int cutIndex) {
         Table table = (Table) itable;
-        ArrayList<ArrayList<Object>> firstHalfRecords = new ArrayList<>(page.getRecords().subList(0, cutIndex));
-        ArrayList<ArrayList<Object>> secondHalfRecords = new ArrayList<>(page.getRecords().subList(cutIndex, page.getRecords().size()));
-        removePageFromBuffer(page);
-        Page firstPage = new Page(table, getAvailablePageID(), firstHalfRecords);
-        addPageToBuffer(firstPage);
-        Page secondPage = new Page(table, getAvailablePageID(), secondHalfRecords);
-        table.insertPage(page.getPageId(), firstPage.getPageId(), secondPage.getPageId());
+        updateIndexes(table, page, cutIndex, page.getRecords().size(), false);
+        Page secondPage = new Page(table, getAvailablePageID());
+        page.moveRecordsTo(cutIndex, secondPage);
+        int position = table.getPageList().indexOf(page.getPageId());
+        table.insertPage(page.getPageId(), page.getPageId(), secondPage.getPageId());
+        refreshFence(table, position, page);
+        refreshFence(table, position + 1, secondPage);
         addPageToBuffer(secondPage);
-        return firstPage;
+        updateIndexes(table, secondPage, 0, secondPage.getRecords().size(), true);
+        return page;
     }
 
-    private int getAvailablePageID(){
-        File[] files = pageDir.listFiles();
-        int fileMax = 0;
-        int bufferMax = 0;
-        if(files.length > 0) {
-            String lastPage = files[files.length - 1].getName();
-            Integer pageID = Integer.parseInt(lastPage);
-            fileMax = pageID;
+    /**
+     * @param table the table to get the indexes of
+     * @return every index on the table, opening any that are not open yet
+     */
+    private ArrayList<BPlusTree> getIndexes(Table table) {
+        ArrayList<BPlusTree> trees = new ArrayList<>();
+        for (String column : table.getIndexedColumns()) {
+            BPlusTree tree = table.getIndex(table.getAttrByName(column));
+            if (tree != null) {
+                trees.add(tree);
+            }
         }
-        if(pageList.size() > 0){
-            bufferMax = pageList.get(pageList.size() - 1);
+        return trees;
+    }
+
+    /**
+     * Adds or removes the index entries of a run of records. Index entries point at a page and
+     * the slot of the record in it, so records that change page are removed from the indexes
+     * before they move and added back once they have.
+     * @param table the table the page belongs to
+     * @param page the page holding the records
+     * @param from the slot of the first record
+     * @param to the slot after the last record
+     * @param add true to add the entries, false to remove them
+     * @return true if every entry was changed; false otherwise
+     */
+    private boolean updateIndexes(Table table, Page page, int from, int to, boolean add) {
+        boolean success = true;
+        if (from >= to) {
+            return true;
         }
-        int max = 0;
-        if(fileMax > max){
-            max = fileMax;
+        for (BPlusTree tree : getIndexes(table)) {
+            int columnIndex = table.getColumnIndex(tree.getColumnName());
+            if (columnIndex == -1) {
+                continue;
+            }
+            ArrayList<ArrayList<Object>> records = page.getRecords();
+            for (int i = from; i < to; i++) {
+                RecordPointer rp = new RecordPointer(page.getPageId(), page.getSlot(i));
+                Object key = records.get(i).get(columnIndex);
+                success = (add ? tree.insertRecordPointer(rp, key) : tree.removeRecordPointer(rp, key)) && success;
+            }
         }
-        if(bufferMax > max){
-            max = bufferMax;
+        return success;
+    }
+
+    private int getAvailablePageID(){
+        return allocator.allocate();
+    }
+
+    /**
+     * Releases the segment frame and the ID of a page that is no longer part of the table
+     * @param table the table the page belonged to
+     * @param pageID the ID of the page
+     */
+    private void freePage(Table table, int pageID) {
+        SegmentFile segment = getSegment(table);
+        if (segment != null) {
+            segment.freePage(pageID);
         }
-        max = max + 1;
-        return max ;
+        freeSpace.remove(table, pageID);
+        allocator.free(pageID);
     }
 
     private void removePageFromBuffer(Page page) {
-        buffer.remove(page);
-        if(pageList.contains(page.getPageId())){
-            pageList.remove(page.getPageId());
-        }
+        buffer.remove(page.getPageId());
     }
 
 
     public boolean addAttributeValue(ITable table1, Object defaultValue) {
         Table table = (Table) table1;
-        for(ArrayList<Object> record : getAllRecords(table)){
-            record.add(defaultValue);
+        for(Page page : loadAllPages(table)){
+            for(ArrayList<Object> record : page.getRecords()){
+                record.add(defaultValue);
+            }
+            page.setDirty();
         }
         return true;
     }
 
     public boolean clearTableData(ITable table) {
         Table t = (Table) table;
-        for(Page pageID : loadAllPages(t)){
-            File pageFile = new File(pageFolder + "/" +pageID.getPageId());
-            if(pageFile.exists()) {
-                pageFile.delete();
+        for(Integer pageID : t.getPageList()){
+            buffer.remove(pageID);
+            freePage(t, pageID);
+        }
+        t.clearPageList();
+        boolean success = t.dropIndexes();
+        SegmentFile segment = segments.remove(t.getTableName());
+        if (segment != null) {
+            try {
+                segment.delete();
+            } catch (IOException e) {
+                System.err.println("Error deleting segment file for table: " + t.getTableName());
+                e.printStackTrace();
+                return false;
             }
-            removePageFromBuffer(pageID);
         }
-        t.clear();
-        return true;
+        return success;
     }
 }
@@ -0,0 +1,115 @@
+package storagemanager;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.HashMap;
+
+/**
+ * Page buffer that evicts pages with the CLOCK (second chance) policy.
+ *
+ * Every frame has a reference bit that is set on access. The hand sweeps the frames, clearing
+ * set bits, and stops at the first frame whose bit is already clear.
+ */
+public class ClockPageBuffer extends PageBuffer {
+
+    private final ArrayList<Page> frames = new ArrayList<>();
+    private final BitSet referenced = new BitSet();
+    private final HashMap<Integer, Integer> frameOf = new HashMap<>();
+    private final ArrayDeque<Integer> freeFrames = new ArrayDeque<>();
+    private int hand = 0;
+
+    @Override
+    public Page get(Integer pageId) {
+        Integer frame = frameOf.get(pageId);
+        if (frame == null) {
+            return null;
+        }
+        referenced.set(frame);
+        return frames.get(frame);
+    }
+
+    @Override
+    public void put(Page page) {
+        Integer frame = frameOf.get(page.getPageId());
+        if (frame == null) {
+            if (freeFrames.isEmpty()) {
+                frame = frames.size();
+                frames.add(page);
+            } else {
+                frame = freeFrames.pop();
+                frames.set(frame, page);
+            }
+            frameOf.put(page.getPageId(), frame);
+        } else {
+            frames.set(frame, page);
+        }
+        referenced.set(frame);
+    }
+
+    @Override
+    public Page remove(Integer pageId) {
+        Integer frame = frameOf.remove(pageId);
+        if (frame == null) {
+            return null;
+        }
+        Page page = frames.get(frame);
+        frames.set(frame, null);
+        referenced.clear(frame);
+        freeFrames.push(frame);
+        return page;
+    }
+
+    @Override
+    public Page victim() {
+        if (frameOf.isEmpty()) {
+            return null;
+        }
+        // Two sweeps are always enough, the first one clears every reference bit it passes
+        for (int step = 0; step < frames.size() * 2; step++) {
+            if (hand >= frames.size()) {
+                hand = 0;
+            }
+            Page page = frames.get(hand);
+            if (page != null) {
+                if (!referenced.get(hand)) {
+                    return page;
+                }
+                referenced.clear(hand);
+            }
+            hand++;
+        }
+        return null;
+    }
+
+    @Override
+    public boolean contains(Integer pageId) {
+        return frameOf.containsKey(pageId);
+    }
+
+    @Override
+    public int size() {
+        return frameOf.size();
+    }
+
+    @Override
+    public Collection<Page> pages() {
+        ArrayList<Page> pages = new ArrayList<>(frameOf.size());
+        for (Page page : frames) {
+            if (page != null) {
+                pages.add(page);
+            }
+        }
+        return pages;
+    }
+
+    @Override
+    public void clear() {
+        frames.clear();
+        referenced.clear();
+        frameOf.clear();
+        freeFrames.clear();
+        hand = 0;
+    }
+}
@@ -7,21 +7,11 @@ import java.io.IOException;
 public class FileManager {
 
     public static String readChars(DataInputStream in) throws IOException {
-        int len = in.readInt();
-        String finalString = "";
-        for(int i = 0; i < len; i ++){
-            char c = in.readChar();
-            finalString += c;
-        }
-        return finalString;
+        return StringCodec.UTF16.read(in);
     }
 
     public static void writeChars(String outputString, DataOutputStream out) throws IOException {
-        out.writeInt(outputString.length());
-        for(int i = 0; i < outputString.length(); i ++){
-            out.writeChar(outputString.charAt(i));
-        }
+        StringCodec.UTF16.write(outputString, out);
     }
 
-
 }
@@ -0,0 +1,117 @@
+package storagemanager;
+
+import common.Table;
+
+import java.io.*;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Free bytes of every page of every table, as of the last time the page was written.
+ *
+ * Lets the buffer manager see how full a page is without loading it. The map is saved in a
+ * file next to the catalog (freespace) when the page buffer is purged.
+ */
+public class FreeSpaceMap {
+
+    private static final int MAGIC = 0x46534D31; // "FSM1"
+
+    private final File file;
+    // table name -> page ID -> free bytes
+    private final HashMap<String, HashMap<Integer, Integer>> tables = new HashMap<>();
+
+    public FreeSpaceMap(String location) {
+        this.file = new File(location + "/freespace");
+    }
+
+    /**
+     * @param table the table the page belongs to
+     * @param pageId the ID of the page
+     * @return the free bytes of the page; -1 if they are not known
+     */
+    public int getFreeBytes(Table table, int pageId) {
+        HashMap<Integer, Integer> pages = tables.get(table.getTableName());
+        if (pages == null) {
+            return -1;
+        }
+        Integer freeBytes = pages.get(pageId);
+        return freeBytes == null ? -1 : freeBytes;
+    }
+
+    public void update(Table table, int pageId, int freeBytes) {
+        tables.computeIfAbsent(table.getTableName(), name -> new HashMap<>()).put(pageId, freeBytes);
+    }
+
+    public void remove(Table table, int pageId) {
+        HashMap<Integer, Integer> pages = tables.get(table.getTableName());
+        if (pages != null) {
+            pages.remove(pageId);
+        }
+    }
+
+    /**
+     * Reads the map from disk, keeping only the pages the tables still have
+     * @param liveTables the tables in the catalog
+     */
+    public void load(Collection<Table> liveTables) {
+        if (!file.exists()) {
+            return;
+        }
+        HashMap<String, HashMap<Integer, Integer>> stored = new HashMap<>();
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            if (in.readInt() != MAGIC) {
+                System.err.println("Ignoring unknown free space map: " + file);
+                return;
+            }
+            int tableCount = in.readInt();
+            for (int t = 0; t < tableCount; t++) {
+                String tableName = FileManager.readChars(in);
+                int pageCount = in.readInt();
+                HashMap<Integer, Integer> pages = new HashMap<>();
+                for (int p = 0; p < pageCount; p++) {
+                    pages.put(in.readInt(), in.readInt());
+                }
+                stored.put(tableName, pages);
+            }
+        } catch (IOException e) {
+            System.err.println("Error reading free space map, page sizes will be measured on load");
+            e.printStackTrace();
+            return;
+        }
+        for (Table table : liveTables) {
+            HashMap<Integer, Integer> pages = stored.get(table.getTableName());
+            if (pages == null) {
+                continue;
+            }
+            HashMap<Integer, Integer> live = new HashMap<>();
+            for (Integer pageId : table.getPageList()) {
+                Integer freeBytes = pages.get(pageId);
+                if (freeBytes != null) {
+                    live.put(pageId, freeBytes);
+                }
+            }
+            tables.put(table.getTableName(), live);
+        }
+    }
+
+    public boolean save() {
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(tables.size());
+            for (Map.Entry<String, HashMap<Integer, Integer>> table : tables.entrySet()) {
+                FileManager.writeChars(table.getKey(), out);
+                out.writeInt(table.getValue().size());
+                for (Map.Entry<Integer, Integer> page : table.getValue().entrySet()) {
+                    out.writeInt(page.getKey());
+                    out.writeInt(page.getValue());
+                }
+            }
+            return true;
+        } catch (IOException e) {
+            System.err.println("Error writing free space map to disk");
+            e.printStackTrace();
+        }
+        return false;
+    }
+}
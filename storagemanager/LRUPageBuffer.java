@@ -0,0 +1,58 @@
+package storagemanager;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+
+/**
+ * Page buffer that evicts the least recently used page.
+ *
+ * Uses an access ordered LinkedHashMap, so the eldest entry is always the next victim.
+ */
+public class LRUPageBuffer extends PageBuffer {
+
+    private final LinkedHashMap<Integer, Page> pages = new LinkedHashMap<>(16, 0.75f, true);
+
+    @Override
+    public Page get(Integer pageId) {
+        return pages.get(pageId);
+    }
+
+    @Override
+    public void put(Page page) {
+        pages.put(page.getPageId(), page);
+    }
+
+    @Override
+    public Page remove(Integer pageId) {
+        return pages.remove(pageId);
+    }
+
+    @Override
+    public Page victim() {
+        if (pages.isEmpty()) {
+            return null;
+        }
+        return pages.values().iterator().next();
+    }
+
+    @Override
+    public boolean contains(Integer pageId) {
+        return pages.containsKey(pageId);
+    }
+
+    @Override
+    public int size() {
+        return pages.size();
+    }
+
+    @Override
+    public Collection<Page> pages() {
+        return new ArrayList<>(pages.values());
+    }
+
+    @Override
+    public void clear() {
+        pages.clear();
+    }
+}
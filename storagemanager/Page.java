@@ -5,70 +5,60 @@ import common.Attribute;
 import common.ITable;
 import common.Table;
 
-import java.io.*;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
 
 public class Page {
 
     private final Table table;
     private ArrayList<ArrayList<Object>> records = new ArrayList<>();
+    // Slot of every record, in the same order as the records. A record keeps its slot for as long
+    // as it stays on the page, so index entries pointing at it do not change when others move.
+    private ArrayList<Integer> slots = new ArrayList<>();
+    private final BitSet usedSlots = new BitSet();
+    // Position of the record in every slot, -1 for an empty slot; null until a slot is looked up
+    private int[] slotPositions;
     private final int pageId;
     private final int pageSize;
+    // True when the records in memory differ from what is stored on disk
+    private boolean dirty;
+    // Bytes the page and its records take on disk, without empty slots, kept up to date as records
+    // are added and removed; -1 when unknown
+    private int usedBytes = -1;
+    // Column types the used bytes were measured with, refreshed when the table gains or loses a column
+    private byte[] columnTypes;
 
     public Page(Table table, int pageId){
         this.table = table;
         this.pageId = pageId;
         this.pageSize = ACatalog.getCatalog().getPageSize();
+        this.dirty = true;
     }
 
-    public Page(Table table, String pageFileLocation, int pageId) {
-        this.table = table;
-        this.pageSize = ACatalog.getCatalog().getPageSize();
-        File inputFile = new File(pageFileLocation);
-        try {
-            FileInputStream fin = new FileInputStream(inputFile);
-            DataInputStream din = new DataInputStream(fin);
-            pageId = din.readInt();
-            int totalStoredRecords = din.readInt();
-            for (int i = 0; i < totalStoredRecords; i++){
-                ArrayList<Object> record = new ArrayList<>();
-                for(Attribute attrib : table.getAttributes()){
-                    String type = attrib.getAttributeType().toLowerCase();
-                    if (type.equals("integer")) {
-                        record.add(din.readInt());
-                    }else if (type.equals("double")) {
-                        record.add(din.readDouble());
-                    }else if (type.equals("boolean")) {
-                        record.add(din.readBoolean());
-                    }else if (type.startsWith("varchar")) {
-                        record.add(FileManager.readChars(din));
-                    }else if (type.startsWith("char")) {
-                        int charLen = din.readInt();
-                        String outputString = "";
-                        for (int readIndex = 0; readIndex < charLen; readIndex++) {
-                            char c = din.readChar();
-                            if (c!='\t') {
-                               outputString += c;
-                            }
-                        }
-                        record.add(outputString);
-                    }
-                }
-                records.add(record);
-            }
-            din.close();
-            fin.close();
-        } catch (IOException e) {
-            e.printStackTrace();
-        }
-        this.pageId = pageId;
+    public Page(Table table, int pageId, ArrayList<ArrayList<Object>> records) {
+        this(table, pageId, records, null);
     }
 
-    public Page(Table table, int pageId, ArrayList<ArrayList<Object>> records) {
+    /**
+     * @param table the table the page belongs to
+     * @param pageId the ID of the page
+     * @param records the records of the page, in primary key order
+     * @param slots the slot of every record, as read from disk; null to number them from 0
+     */
+    public Page(Table table, int pageId, ArrayList<ArrayList<Object>> records, int[] slots) {
         this.table = table;
         this.pageId = pageId;
         this.records = records;
         this.pageSize = ACatalog.getCatalog().getPageSize();
+        this.dirty = true;
+        this.slots = new ArrayList<>(records.size());
+        for (int i = 0; i < records.size(); i++) {
+            int slot = slots == null ? i : slots[i];
+            this.slots.add(slot);
+            usedSlots.set(slot);
+        }
     }
 
     public Integer getPageId(){
@@ -87,6 +77,94 @@ public class Page {
         return records;
     }
 
+    /**
+     * @param index the index of a record in the page
+     * @return the slot of the record, which index entries point at
+     */
+    public int getSlot(int index) {
+        return slots.get(index);
+    }
+
+    /**
+     * @param slot a slot of the page
+     * @return the index of the record in the slot; -1 if the slot is empty
+     */
+    public int findSlot(int slot) {
+        if (slotPositions == null) {
+            slotPositions = new int[usedSlots.length()];
+            Arrays.fill(slotPositions, -1);
+            for (int i = 0; i < slots.size(); i++) {
+                slotPositions[slots.get(i)] = i;
+            }
+        }
+        return slot >= 0 && slot < slotPositions.length ? slotPositions[slot] : -1;
+    }
+
+    /**
+     * @return the number of slots in the slot directory, empty ones included
+     */
+    public int getSlotCount() {
+        return usedSlots.length();
+    }
+
+    /**
+     * @return the number of empty slots left in the slot directory by records that were removed
+     */
+    public int getEmptySlots() {
+        return usedSlots.length() - records.size();
+    }
+
+    /**
+     * Numbers the slots of the records from 0 again, dropping the empty ones. Every record may
+     * get a new slot, so index entries pointing at the page have to be rewritten.
+     */
+    public void compactSlots() {
+        usedSlots.clear();
+        for (int i = 0; i < slots.size(); i++) {
+            slots.set(i, i);
+            usedSlots.set(i);
+        }
+        slotPositions = null;
+        dirty = true;
+    }
+
+    /**
+     * Puts a record at an index with the lowest empty slot
+     */
+    private void insertAt(int index, ArrayList<Object> record) {
+        int slot = usedSlots.nextClearBit(0);
+        usedSlots.set(slot);
+        records.add(index, record);
+        slots.add(index, slot);
+        slotPositions = null;
+    }
+
+    private ArrayList<Object> removeAt(int index) {
+        usedSlots.clear(slots.remove(index));
+        slotPositions = null;
+        return records.remove(index);
+    }
+
+    public boolean isDirty() {
+        return dirty;
+    }
+
+    /**
+     * Flags the page as modified so it is written back when it leaves the buffer, and has its
+     * size measured again. Callers that change records returned by getRecords() directly must call this.
+     */
+    public void setDirty() {
+        this.dirty = true;
+        this.usedBytes = -1;
+    }
+
+    /**
+     * Flags the page as matching its copy on disk
+     */
+    public void markClean() {
+        this.dirty = false;
+    }
+
     public boolean addRecord(ITable table, ArrayList<Object> record, int index){
         int primaryKeyIndex = table.getAttributes().indexOf(table.getPrimaryKey());
         for(int i = 0; i < record.size(); i++){
@@ -101,54 +179,134 @@ public class Page {
             System.err.println("Record contains null values in a non-null column.");
             return false;
         }
-        for(ArrayList<Object> recordList : records){
-            if(recordList.get(primaryKeyIndex).equals(record.get(primaryKeyIndex))){
-                return false;
-            }
+        if(findRecord(record.get(primaryKeyIndex)) >= 0){
+            return false;
+        }
+        insertAt(index, record);
+        dirty = true;
+        if (usedBytes != -1) {
+            usedBytes += PageFormat.recordSize(columnTypes, record);
         }
-        records.add(index,record);
         return true;
     }
 
     public int deleteRecord(ITable table, Object pkValue){
-        int primaryKeyIndex = table.getAttributes().indexOf(table.getPrimaryKey());
-        for(ArrayList<Object> recordList : records){
-            if(recordList.get(primaryKeyIndex).equals(pkValue)){
-                int index = records.indexOf(recordList);
-                records.remove(recordList);
-                return index;
+        int index = findRecord(pkValue);
+        if(index < 0){
+            return -1;
+        }
+        ArrayList<Object> removed = removeAt(index);
+        dirty = true;
+        if (usedBytes != -1) {
+            usedBytes -= PageFormat.recordSize(columnTypes, removed);
+        }
+        return index;
+    }
+
+    /**
+     * Binary searches the page for a primary key. Records on a page are sorted by primary key.
+     * @param pkValue the primary key to look for
+     * @return the index of the record with the key; otherwise (-(insertion point) - 1), where
+     * the insertion point is the index the key would be added at
+     */
+    public int findRecord(Object pkValue) {
+        int primaryKeyIndex = table.getPrimaryKeyIndex();
+        int low = 0;
+        int high = records.size() - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            int compare = RecordHelper.compare(records.get(mid).get(primaryKeyIndex), pkValue);
+            if (compare < 0) {
+                low = mid + 1;
+            } else if (compare > 0) {
+                high = mid - 1;
+            } else {
+                return mid;
             }
         }
-        return -1;
+        return -(low + 1);
+    }
+
+    /**
+     * @param pkValue the primary key to look for
+     * @return the record with the primary key; null if it is not on this page
+     */
+    public ArrayList<Object> getRecord(Object pkValue) {
+        int index = findRecord(pkValue);
+        return index < 0 ? null : records.get(index);
     }
 
     public boolean hasSpace() {
-        int currentSizeBytes = 0;
-        for (int i = 0; i < getRecords().size(); i++) {
-            ArrayList<Object> records = getRecords().get(i);
-            for (int j = 0; j < records.size(); j++) {
-                Object record = records.get(j);
-                String type = table.getAttributes().get(j).getAttributeType();
-                currentSizeBytes += getTypeBytes(record, type);
+        return getUsedBytes() < pageSize;
+    }
+
+    /**
+     * @return the number of bytes the page takes on disk
+     */
+    public int getUsedBytes() {
+        if (columnTypes == null || columnTypes.length != table.getAttributes().size()) {
+            columnTypes = PageFormat.columnTypes(table);
+            usedBytes = -1;
+        }
+        if (usedBytes == -1) {
+            usedBytes = PageFormat.HEADER_SIZE;
+            for (ArrayList<Object> record : records) {
+                usedBytes += PageFormat.recordSize(columnTypes, record);
             }
         }
-        return currentSizeBytes < pageSize;
+        return usedBytes + getEmptySlots() * PageFormat.SLOT_SIZE;
     }
 
+    /**
+     * @return the number of bytes left before the page is full; negative if it is overfull
+     */
+    public int getFreeBytes() {
+        return pageSize - getUsedBytes();
+    }
+
+    /**
+     * @param record a record of the table this page belongs to
+     * @return the number of bytes the record would take on this page
+     */
+    public int getRecordBytes(ArrayList<Object> record) {
+        getUsedBytes();
+        return PageFormat.recordSize(columnTypes, record);
+    }
+
+    /**
+     * Moves the records from the provided index to the end of the page to the front of the other
+     * page. The moved records get new slots in the other page, the records already there keep theirs.
+     * @param fromIndex the index of the first record to move
+     * @param next the page that follows this one in the table
+     */
+    public void moveRecordsTo(int fromIndex, Page next) {
+        List<ArrayList<Object>> tail = records.subList(fromIndex, records.size());
+        for (int i = 0; i < tail.size(); i++) {
+            next.insertAt(i, tail.get(i));
+        }
+        List<Integer> tailSlots = slots.subList(fromIndex, slots.size());
+        for (int slot : tailSlots) {
+            usedSlots.clear(slot);
+        }
+        tailSlots.clear();
+        tail.clear();
+        slotPositions = null;
+        usedBytes = -1;
+        next.usedBytes = -1;
+        dirty = true;
+        next.dirty = true;
+    }
+
+    /**
+     * @param record the value to measure
+     * @param type the attribute type of the value
+     * @return the number of bytes the value takes on disk
+     */
     public int getTypeBytes(Object record, String type) {
-        if (type.equals("Integer")) {
-            return 4;
-        } else if (type.equals("Double")) {
-            return 8;
-        } else if (type.equals("Boolean")) {
-            return 1;
-        } else if (type.startsWith("Varchar")) {
-            String outputString = (String) record;
-            return (outputString.length() * 2) + 6;
-        } else if (type.startsWith("Char")) {
-            return (Integer.parseInt(type.substring(type.indexOf("(") + 1, type.indexOf(")"))) * 2) + 4;
+        if (record == null) {
+            return 0;
         }
-        return 0;
+        return PageFormat.valueSize(PageFormat.typeCode(new Attribute("", type)), record);
     }
 
     public boolean updateRecord(ITable table, Object primaryKey, ArrayList<Object> newRecord) {
@@ -173,9 +331,14 @@ public class Page {
             System.err.println("Record contains null values in a non-null column.");
             return false;
         }
-        int recordIndex = deleteRecord(table,primaryKey);
-        if(recordIndex != -1) {
-            records.add(recordIndex,newRecord);
+        // The new record takes the place and the slot of the old one
+        int recordIndex = findRecord(primaryKey);
+        if(recordIndex >= 0) {
+            ArrayList<Object> oldRecord = records.set(recordIndex, newRecord);
+            dirty = true;
+            if (usedBytes != -1) {
+                usedBytes += PageFormat.recordSize(columnTypes, newRecord) - PageFormat.recordSize(columnTypes, oldRecord);
+            }
             return true;
         }
         System.err.println("Could not update record");
@@ -0,0 +1,93 @@
+package storagemanager;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.HashSet;
+
+/**
+ * Hands out page IDs for the whole database.
+ *
+ * IDs released with free() are reused before new ones are created, so page IDs stay dense.
+ * The allocator state is saved with the catalog, which means no directory or segment has to
+ * be scanned to find the next free ID on startup.
+ */
+public class PageAllocator {
+
+    private int nextPageId;
+    private final ArrayDeque<Integer> freePageIds = new ArrayDeque<>();
+    // Mirrors freePageIds so a page freed twice is not handed out twice
+    private final HashSet<Integer> freeSet = new HashSet<>();
+
+    public PageAllocator(int nextPageId) {
+        this.nextPageId = nextPageId;
+    }
+
+    /**
+     * @return an unused page ID
+     */
+    public int allocate() {
+        Integer pageId = freePageIds.poll();
+        if (pageId != null) {
+            freeSet.remove(pageId);
+            return pageId;
+        }
+        return nextPageId++;
+    }
+
+    /**
+     * Allocates several page IDs at once. Freed IDs are used up first, the rest is one run of
+     * consecutive new IDs.
+     * @param count the number of IDs to allocate
+     * @return the allocated IDs
+     */
+    public int[] allocate(int count) {
+        int[] pageIds = new int[count];
+        int i = 0;
+        while (i < count && !freePageIds.isEmpty()) {
+            pageIds[i++] = allocate();
+        }
+        while (i < count) {
+            pageIds[i++] = nextPageId++;
+        }
+        return pageIds;
+    }
+
+    /**
+     * Returns a page ID to the allocator so it can be reused
+     * @param pageId the page ID that is no longer used
+     */
+    public void free(int pageId) {
+        if (pageId < nextPageId && freeSet.add(pageId)) {
+            freePageIds.push(pageId);
+        }
+    }
+
+    public int getNextPageId() {
+        return nextPageId;
+    }
+
+    public int getFreeCount() {
+        return freePageIds.size();
+    }
+
+    public void write(DataOutputStream out) throws IOException {
+        out.writeInt(nextPageId);
+        out.writeInt(freePageIds.size());
+        for (Integer pageId : freePageIds) {
+            out.writeInt(pageId);
+        }
+    }
+
+    public static PageAllocator read(DataInputStream in) throws IOException {
+        PageAllocator allocator = new PageAllocator(in.readInt());
+        int freeCount = in.readInt();
+        for (int i = 0; i < freeCount; i++) {
+            int pageId = in.readInt();
+            allocator.freePageIds.add(pageId);
+            allocator.freeSet.add(pageId);
+        }
+        return allocator;
+    }
+}
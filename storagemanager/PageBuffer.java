@@ -0,0 +1,61 @@
+package storagemanager;
+
+import java.util.Collection;
+
+/**
+ * The set of pages currently held in memory, keyed by page ID.
+ *
+ * Lookups, inserts and removals are O(1). Which page is given up when the buffer is over its
+ * limit is decided by the replacement policy of the implementation.
+ */
+public abstract class PageBuffer {
+
+    /**
+     * Creates an empty page buffer for the provided replacement policy
+     * @param policy the replacement policy to use
+     * @return the new page buffer
+     */
+    public static PageBuffer create(ReplacementPolicy policy) {
+        if (policy == ReplacementPolicy.CLOCK) {
+            return new ClockPageBuffer();
+        }
+        return new LRUPageBuffer();
+    }
+
+    /**
+     * Gets the page with the provided ID and marks it as recently used
+     * @param pageId the ID of the page
+     * @return the page; null if it is not in the buffer
+     */
+    public abstract Page get(Integer pageId);
+
+    /**
+     * Adds the page to the buffer, or marks it as recently used if it is already there
+     * @param page the page to add
+     */
+    public abstract void put(Page page);
+
+    /**
+     * Removes the page with the provided ID from the buffer
+     * @param pageId the ID of the page
+     * @return the removed page; null if it was not in the buffer
+     */
+    public abstract Page remove(Integer pageId);
+
+    /**
+     * Picks the page that should be given up next. The page is not removed.
+     * @return the page to evict; null if the buffer is empty
+     */
+    public abstract Page victim();
+
+    public abstract boolean contains(Integer pageId);
+
+    public abstract int size();
+
+    /**
+     * @return a snapshot of the pages in the buffer
+     */
+    public abstract Collection<Page> pages();
+
+    public abstract void clear();
+}
@@ -0,0 +1,309 @@
+package storagemanager;
+
+import common.Attribute;
+import common.Table;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+
+/**
+ * Binary layout of a page on disk.
+ *
+ * A page is a fixed header, a slot directory with the offset of every record, and the records
+ * themselves packed one after another in primary key order:
+ *
+ *   header:  magic (2) | version (1) | flags (1) | page ID (4) | slot count (4) | data end (4)
+ *   slots:   record offset (4) per slot, 0 for an empty slot
+ *   records: null bitmap, then every non null value
+ *
+ * A record keeps its slot while it stays on the page and index entries point at the slot, so
+ * slots are not in primary key order and a removed record leaves an empty slot until a new
+ * record takes it. Pages of version 1 have no empty slots and their slots are in record order.
+ *
+ * Integers take 4 bytes, doubles 8, booleans 1. char(n) and varchar(n) are stored the same way,
+ * a 2 byte length followed by the encoded string, so char(n) values are not padded. Strings are
+ * encoded with the StringCodec named by the page.charset property (utf-16 by default), and the
+ * codec is recorded in the header flags.
+ * A record ends where the next one starts, the last one ends at data end.
+ */
+public class PageFormat {
+
+    public static final short MAGIC = 0x5350; // "SP"
+    public static final byte VERSION = 2;
+    public static final int HEADER_SIZE = 16;
+    public static final int SLOT_SIZE = 4;
+
+    static final byte INTEGER = 1;
+    static final byte DOUBLE = 2;
+    static final byte BOOLEAN = 3;
+    static final byte STRING = 4;
+
+    private static final StringCodec stringCodec =
+            StringCodec.fromName(System.getProperty("page.charset", "utf-16"));
+
+    /**
+     * Parses the attribute types of the table once so values can be encoded without
+     * looking at the type strings again
+     * @param table the table to get the column types of
+     * @return the type code of every column
+     */
+    public static byte[] columnTypes(Table table) {
+        byte[] types = new byte[table.getAttributes().size()];
+        for (int i = 0; i < types.length; i++) {
+            types[i] = typeCode(table.getAttributes().get(i));
+        }
+        return types;
+    }
+
+    static byte typeCode(Attribute attribute) {
+        String type = attribute.getAttributeType().toLowerCase();
+        if (type.equals("integer")) {
+            return INTEGER;
+        } else if (type.equals("double")) {
+            return DOUBLE;
+        } else if (type.equals("boolean")) {
+            return BOOLEAN;
+        } else if (type.startsWith("varchar") || type.startsWith("char")) {
+            return STRING;
+        }
+        return 0;
+    }
+
+    /**
+     * @param type the type code of the column
+     * @param value the value to store, not null
+     * @return the number of bytes the value takes in a record
+     */
+    static int valueSize(byte type, Object value) {
+        switch (type) {
+            case INTEGER:
+                return 4;
+            case DOUBLE:
+                return 8;
+            case BOOLEAN:
+                return 1;
+            case STRING:
+                return 2 + stringCodec.encodedSize((String) value);
+            default:
+                return 0;
+        }
+    }
+
+    /**
+     * @param types the column types of the table
+     * @param record the record to measure
+     * @return the number of bytes the record takes in a page, slot included
+     */
+    public static int recordSize(byte[] types, ArrayList<Object> record) {
+        int size = SLOT_SIZE + bitmapSize(types.length);
+        // Records can be a column short or long while alter table is rewriting them
+        for (int i = 0; i < types.length && i < record.size(); i++) {
+            Object value = record.get(i);
+            if (value != null) {
+                size += valueSize(types[i], value);
+            }
+        }
+        return size;
+    }
+
+    /**
+     * @param table the table the records belong to
+     * @param records the records of the page
+     * @return the number of bytes the page takes on disk
+     */
+    public static int pageSize(Table table, ArrayList<ArrayList<Object>> records) {
+        byte[] types = columnTypes(table);
+        int size = HEADER_SIZE;
+        for (ArrayList<Object> record : records) {
+            size += recordSize(types, record);
+        }
+        return size;
+    }
+
+    private static int bitmapSize(int columns) {
+        return (columns + 7) / 8;
+    }
+
+    /**
+     * Encodes the page into the buffer, starting at position 0. On return the buffer is
+     * flipped and ready to be written.
+     * @param page the page to encode
+     * @param out the buffer to encode into
+     */
+    public static void write(Page page, ByteBuffer out) throws IOException {
+        byte[] types = columnTypes(page.getTable());
+        ArrayList<ArrayList<Object>> records = page.getRecords();
+        int slotCount = page.getSlotCount();
+        int size = HEADER_SIZE + (slotCount - records.size()) * SLOT_SIZE;
+        for (ArrayList<Object> record : records) {
+            size += recordSize(types, record);
+        }
+        if (size > out.capacity()) {
+            throw new IOException("Page " + page.getPageId() + " is " + size + " bytes, pages hold " + out.capacity());
+        }
+        out.clear();
+        out.putShort(MAGIC);
+        out.put(VERSION);
+        out.put(stringCodec.getFlag());
+        out.putInt(page.getPageId());
+        out.putInt(slotCount);
+        out.putInt(size);
+        int bitmapSize = bitmapSize(types.length);
+        int offset = HEADER_SIZE + slotCount * SLOT_SIZE;
+        for (int slot = 0; slot < slotCount; slot++) {
+            out.putInt(HEADER_SIZE + slot * SLOT_SIZE, 0);
+        }
+        for (int r = 0; r < records.size(); r++) {
+            ArrayList<Object> record = records.get(r);
+            out.putInt(HEADER_SIZE + page.getSlot(r) * SLOT_SIZE, offset);
+            out.position(offset);
+            int bitmapStart = offset;
+            for (int b = 0; b < bitmapSize; b++) {
+                out.put((byte) 0);
+            }
+            for (int i = 0; i < types.length; i++) {
+                Object value = record.get(i);
+                if (value == null) {
+                    int index = bitmapStart + i / 8;
+                    out.put(index, (byte) (out.get(index) | (1 << (i % 8))));
+                    continue;
+                }
+                switch (types[i]) {
+                    case INTEGER:
+                        out.putInt((Integer) value);
+                        break;
+                    case DOUBLE:
+                        out.putDouble((Double) value);
+                        break;
+                    case BOOLEAN:
+                        out.put((byte) ((Boolean) value ? 1 : 0));
+                        break;
+                    case STRING:
+                        stringCodec.write((String) value, out);
+                        break;
+                }
+            }
+            offset = out.position();
+        }
+        out.position(size);
+        out.flip();
+    }
+
+    /**
+     * Decodes a page written by write()
+     * @param table the table the page belongs to
+     * @param pageId the ID the page is expected to have
+     * @param in the page bytes, starting at position 0
+     * @return the records of the page
+     */
+    public static ArrayList<ArrayList<Object>> read(Table table, int pageId, ByteBuffer in) throws IOException {
+        return read(table, in, slots(pageId, in));
+    }
+
+    /**
+     * Decodes the records of a page written by write()
+     * @param table the table the page belongs to
+     * @param in the page bytes, starting at position 0
+     * @param slots the slots of the records, as returned by slots()
+     * @return the records of the page, in the order of the slots
+     */
+    public static ArrayList<ArrayList<Object>> read(Table table, ByteBuffer in, int[] slots) {
+        StringCodec codec = StringCodec.fromFlag(in.get(3));
+        byte[] types = columnTypes(table);
+        int bitmapSize = bitmapSize(types.length);
+        ArrayList<ArrayList<Object>> records = new ArrayList<>(slots.length);
+        for (int slot : slots) {
+            int offset = in.getInt(HEADER_SIZE + slot * SLOT_SIZE);
+            in.position(offset + bitmapSize);
+            ArrayList<Object> record = new ArrayList<>(types.length);
+            for (int i = 0; i < types.length; i++) {
+                if ((in.get(offset + i / 8) & (1 << (i % 8))) != 0) {
+                    record.add(null);
+                    continue;
+                }
+                switch (types[i]) {
+                    case INTEGER:
+                        record.add(in.getInt());
+                        break;
+                    case DOUBLE:
+                        record.add(in.getDouble());
+                        break;
+                    case BOOLEAN:
+                        record.add(in.get() != 0);
+                        break;
+                    case STRING:
+                        record.add(codec.read(in));
+                        break;
+                    default:
+                        record.add(null);
+                }
+            }
+            records.add(record);
+        }
+        return records;
+    }
+
+    /**
+     * Reads the number of records in a page from its header, without decoding them
+     * @param pageId the ID the page should have
+     * @param in the bytes of the page
+     * @return the number of records
+     */
+    public static int recordCount(int pageId, ByteBuffer in) throws IOException {
+        checkHeader(pageId, in);
+        int slotCount = in.getInt(8);
+        int count = 0;
+        for (int slot = 0; slot < slotCount; slot++) {
+            if (in.getInt(HEADER_SIZE + slot * SLOT_SIZE) != 0) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Reads the slot directory of a page
+     * @param pageId the ID the page should have
+     * @param in the bytes of the page
+     * @return the slot of every record, in the order the records are stored in
+     */
+    public static int[] slots(int pageId, ByteBuffer in) throws IOException {
+        checkHeader(pageId, in);
+        int slotCount = in.getInt(8);
+        // Offset in the high half and slot in the low half, so sorting puts the slots in record order
+        long[] offsets = new long[slotCount];
+        int count = 0;
+        boolean sorted = true;
+        for (int slot = 0; slot < slotCount; slot++) {
+            int offset = in.getInt(HEADER_SIZE + slot * SLOT_SIZE);
+            if (offset != 0) {
+                offsets[count] = ((long) offset << 32) | slot;
+                sorted = sorted && (count == 0 || offsets[count - 1] < offsets[count]);
+                count++;
+            }
+        }
+        if (!sorted) {
+            Arrays.sort(offsets, 0, count);
+        }
+        int[] slots = new int[count];
+        for (int i = 0; i < count; i++) {
+            slots[i] = (int) offsets[i];
+        }
+        return slots;
+    }
+
+    private static void checkHeader(int pageId, ByteBuffer in) throws IOException {
+        if (in.getShort(0) != MAGIC) {
+            throw new IOException("Page " + pageId + " is not in a known page format");
+        }
+        if (in.get(2) != VERSION && in.get(2) != 1) {
+            throw new IOException("Page " + pageId + " uses page format version " + in.get(2)
+                    + ", expected " + VERSION);
+        }
+        if (in.getInt(4) != pageId) {
+            throw new IOException("Expected page " + pageId + " but found page " + in.getInt(4));
+        }
+    }
+}
@@ -9,6 +9,29 @@ import java.util.List;
 import java.util.Locale;
 
 public class RecordHelper {
+    /**
+     * Orders two values of the same column. Nulls come first, integers and doubles are compared by value.
+     * @param o1 the first value
+     * @param o2 the second value
+     * @return negative, zero or positive as o1 is less than, equal to or greater than o2
+     */
+    public static int compare(Object o1, Object o2) {
+        if (o1 == null || o2 == null) {
+            return o1 == null ? (o2 == null ? 0 : -1) : 1;
+        }
+        if (o1 instanceof Integer && o2 instanceof Integer) {
+            return Integer.compare((Integer) o1, (Integer) o2);
+        } else if (o1 instanceof Number && o2 instanceof Number) {
+            return Double.compare(((Number) o1).doubleValue(), ((Number) o2).doubleValue());
+        } else if (o1 instanceof Boolean && o2 instanceof Boolean) {
+            return Boolean.compare((Boolean) o1, (Boolean) o2);
+        } else if (o1 instanceof String && o2 instanceof String) {
+            return ((String) o1).compareTo((String) o2);
+        }
+        System.err.println("Invalid types compared: '"+o1.getClass() + "' and '"+o2.getClass()+"'");
+        return 0;
+    }
+
     public static boolean compareObjects(Object o1, Object o2) {
         return lessThan(o1, o2);
     }
@@ -107,11 +130,11 @@ public class RecordHelper {
 
     public static boolean equals(Object o1, Object o2) {
         if(o1 instanceof Integer && o2 instanceof Integer){
-            return (Integer) o1 == (Integer) o2;
+            return ((Integer) o1).intValue() == (Integer) o2;
         } else if(o1 instanceof Integer && o2 instanceof Double){
             return ((Integer) o1).equals(((Double) o2).intValue());
         } else if(o1 instanceof Double && o2 instanceof Double){
-            return (Double) o1 == (Double) o2;
+            return ((Double) o1).doubleValue() == (Double) o2;
         } else if(o1 instanceof Double && o2 instanceof Integer){
             return ((Double) o1).equals(((Integer) o2));
         } else if(o1 instanceof Boolean && o2 instanceof Boolean){
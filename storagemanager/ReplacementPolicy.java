@@ -0,0 +1,26 @@
+package storagemanager;
+
+/**
+ * Page replacement policies supported by the page buffer.
+ *
+ * LRU evicts the page that was accessed the longest time ago.
+ * CLOCK approximates LRU with a single reference bit per frame and a sweeping hand.
+ */
+public enum ReplacementPolicy {
+    LRU, CLOCK;
+
+    /**
+     * Parses a policy name, falling back to LRU for unknown names
+     * @param name the name of the policy (case insensitive)
+     * @return the matching policy
+     */
+    public static ReplacementPolicy fromName(String name) {
+        for (ReplacementPolicy policy : values()) {
+            if (policy.name().equalsIgnoreCase(name.strip())) {
+                return policy;
+            }
+        }
+        System.err.println("Unknown page replacement policy '" + name + "', using LRU");
+        return LRU;
+    }
+}
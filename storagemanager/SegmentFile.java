@@ -0,0 +1,192 @@
+package storagemanager;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * A single file holding all the pages of one table.
+ *
+ * The file is split into fixed size frames, and each page lives in one frame at offset
+ * frame * frameSize. The file grows an extent (a run of frames) at a time instead of a page at a
+ * time. Frames released by freePage are reused before the file is grown again.
+ *
+ * Which frame holds which page is kept in a small directory file next to the segment
+ * (name.dir). It is read once when the segment is opened and rewritten by sync().
+ */
+public class SegmentFile {
+
+    public static final int EXTENT_FRAMES = 16;
+    private static final int DIRECTORY_MAGIC = 0x53454731; // "SEG1"
+
+    private final File segmentFile;
+    private final File directoryFile;
+    private final int frameSize;
+    private final RandomAccessFile file;
+    private final FileChannel channel;
+
+    // page ID -> frame index
+    private final HashMap<Integer, Integer> frames = new HashMap<>();
+    private final ArrayDeque<Integer> freeFrames = new ArrayDeque<>();
+    // frames handed out at least once, and frames the file has been extended to hold
+    private int usedFrames = 0;
+    private int allocatedFrames = 0;
+    private boolean directoryDirty = false;
+
+    public SegmentFile(File segmentFile, int frameSize) throws IOException {
+        this.segmentFile = segmentFile;
+        this.directoryFile = new File(segmentFile.getPath() + ".dir");
+        this.frameSize = frameSize;
+        if (directoryFile.exists()) {
+            loadDirectory();
+        }
+        this.file = new RandomAccessFile(segmentFile, "rw");
+        this.channel = file.getChannel();
+        allocatedFrames = Math.max(allocatedFrames, (int) (channel.size() / frameSize));
+    }
+
+    /**
+     * Reads the frame holding the provided page with a single read into the buffer
+     * @param pageId the ID of the page to read
+     * @param buffer the buffer to read into, at least frameSize bytes; flipped on return
+     * @return true if the page was read; false if it is not stored in this segment
+     */
+    public boolean readPage(int pageId, ByteBuffer buffer) throws IOException {
+        Integer frame = frames.get(pageId);
+        if (frame == null) {
+            return false;
+        }
+        buffer.clear();
+        buffer.limit(frameSize);
+        long offset = (long) frame * frameSize;
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, offset + buffer.position()) < 0) {
+                break;
+            }
+        }
+        buffer.flip();
+        return true;
+    }
+
+    /**
+     * Writes the page to its frame with a single write, assigning a frame if the page is new
+     * @param pageId the ID of the page to write
+     * @param buffer the serialized page between position and limit, at most frameSize bytes
+     */
+    public void writePage(int pageId, ByteBuffer buffer) throws IOException {
+        int length = buffer.remaining();
+        if (length > frameSize) {
+            throw new IOException("Page " + pageId + " is " + length + " bytes, frames hold " + frameSize);
+        }
+        Integer frame = frames.get(pageId);
+        if (frame == null) {
+            frame = allocateFrame();
+            frames.put(pageId, frame);
+            directoryDirty = true;
+        }
+        long offset = (long) frame * frameSize - buffer.position();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer, offset + buffer.position());
+        }
+    }
+
+    /**
+     * Releases the frame of the provided page so a later page can reuse it
+     * @param pageId the ID of the page to release
+     * @return true if the page was stored in this segment; false otherwise
+     */
+    public boolean freePage(int pageId) {
+        Integer frame = frames.remove(pageId);
+        if (frame == null) {
+            return false;
+        }
+        freeFrames.push(frame);
+        directoryDirty = true;
+        return true;
+    }
+
+    private int allocateFrame() throws IOException {
+        if (!freeFrames.isEmpty()) {
+            return freeFrames.pop();
+        }
+        if (usedFrames >= allocatedFrames) {
+            allocatedFrames += EXTENT_FRAMES;
+            file.setLength((long) allocatedFrames * frameSize);
+        }
+        return usedFrames++;
+    }
+
+    /**
+     * Forces page data to disk and saves the frame directory if it changed
+     */
+    public void sync() throws IOException {
+        channel.force(false);
+        if (!directoryDirty) {
+            return;
+        }
+        try (DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(new FileOutputStream(directoryFile)))) {
+            out.writeInt(DIRECTORY_MAGIC);
+            out.writeInt(frameSize);
+            out.writeInt(usedFrames);
+            out.writeInt(allocatedFrames);
+            out.writeInt(frames.size());
+            for (Map.Entry<Integer, Integer> entry : frames.entrySet()) {
+                out.writeInt(entry.getKey());
+                out.writeInt(entry.getValue());
+            }
+            out.writeInt(freeFrames.size());
+            for (Integer frame : freeFrames) {
+                out.writeInt(frame);
+            }
+        }
+        directoryDirty = false;
+    }
+
+    private void loadDirectory() throws IOException {
+        try (DataInputStream in = new DataInputStream(
+                new BufferedInputStream(new FileInputStream(directoryFile)))) {
+            if (in.readInt() != DIRECTORY_MAGIC) {
+                throw new IOException("Not a segment directory: " + directoryFile);
+            }
+            int storedFrameSize = in.readInt();
+            if (storedFrameSize != frameSize) {
+                throw new IOException("Segment " + segmentFile + " uses " + storedFrameSize
+                        + " byte frames, expected " + frameSize);
+            }
+            usedFrames = in.readInt();
+            allocatedFrames = in.readInt();
+            int pageCount = in.readInt();
+            for (int i = 0; i < pageCount; i++) {
+                frames.put(in.readInt(), in.readInt());
+            }
+            int freeCount = in.readInt();
+            for (int i = 0; i < freeCount; i++) {
+                freeFrames.add(in.readInt());
+            }
+        }
+    }
+
+    /**
+     * Syncs and closes the segment
+     */
+    public void close() throws IOException {
+        sync();
+        channel.close();
+        file.close();
+    }
+
+    /**
+     * Closes the segment and deletes its file and frame directory
+     */
+    public void delete() throws IOException {
+        channel.close();
+        file.close();
+        if (!segmentFile.delete() || (directoryFile.exists() && !directoryFile.delete())) {
+            throw new IOException("Could not delete segment " + segmentFile);
+        }
+    }
+}
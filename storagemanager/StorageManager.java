@@ -2,12 +2,15 @@ package storagemanager;
 
 import common.Attribute;
 import common.ITable;
+import common.RecordPointer;
 import common.Table;
 
 import java.lang.reflect.Array;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
 
 public class StorageManager extends AStorageManager{
 
@@ -33,11 +36,63 @@ public class StorageManager extends AStorageManager{
         return pageBuffer.getAllRecords(table);
     }
 
+    /**
+     * Reads the records of a table in primary key order, loading a page only once the records
+     * before it are read
+     * @param table the table to read
+     * @return the records
+     */
+    public Iterator<ArrayList<Object>> scan(ITable table) {
+        return pageBuffer.scan(table);
+    }
+
+    /**
+     * Counts the records of a table from the headers of its pages
+     * @param table the table to count
+     * @return the number of records; -1 if a page could not be read
+     */
+    public int countRecords(ITable table) {
+        return pageBuffer.countRecords(table);
+    }
+
+    /**
+     * Gets the records at a list of record pointers, reading only the pages they are in
+     * @param table the table the records are in
+     * @param pointers the pointers to the records, best sorted in page order
+     * @return the records, in the order of the pointers; null upon error
+     */
+    public ArrayList<ArrayList<Object>> getRecords(ITable table, List<RecordPointer> pointers) {
+        return pageBuffer.getRecords(table, pointers);
+    }
+
     @Override
     public boolean insertRecord(ITable table, ArrayList<Object> record) {
         return pageBuffer.insertRecord(table,record);
     }
 
+    /**
+     * Inserts many records at once, packing new pages up to the default fill factor
+     * (bulkload.fillfactor property, 0.9 if not set).
+     * @param table the table to insert into
+     * @param records the records to insert, in any order
+     * @return true if every record was inserted; false if any was rejected
+     */
+    public boolean insertRecords(ITable table, Iterable<ArrayList<Object>> records) {
+        return insertRecords(table, records, Double.parseDouble(System.getProperty("bulkload.fillfactor", "0.9")));
+    }
+
+    /**
+     * Inserts many records at once. The records are sorted by primary key and packed into pages
+     * filled up to the fill factor, and the primary key index is built bottom up.
+     * @param table the table to insert into
+     * @param records the records to insert, in any order
+     * @param fillFactor how full to make each new page, between 0 and 1
+     * @return true if every record was inserted; false if any was rejected
+     */
+    public boolean insertRecords(ITable table, Iterable<ArrayList<Object>> records, double fillFactor) {
+        return pageBuffer.insertRecords(table,records,fillFactor);
+    }
+
     @Override
     public boolean deleteRecord(ITable table, Object primaryKey) {
         return pageBuffer.deleteRecord(table,primaryKey);
@@ -89,7 +144,28 @@ public class StorageManager extends AStorageManager{
     }
 
 
+    /**
+     * Fills a new index with every record of its table, building it bottom up. Nodes are filled
+     * to the bulkload.fillfactor property, 0.9 if not set, and the sort runs in parallel unless
+     * the index.parallelsort property is false.
+     * @param itable the table the index is on
+     * @param indexName the name of the indexed column
+     * @return true if successful; false otherwise
+     */
     public boolean populateIndex(ITable itable, String indexName){
-        return pageBuffer.populateIndex(itable,indexName);
+        return populateIndex(itable, indexName,
+                Boolean.parseBoolean(System.getProperty("index.parallelsort", "true")));
+    }
+
+    /**
+     * Fills a new index with every record of its table, building it bottom up
+     * @param itable the table the index is on
+     * @param indexName the name of the indexed column
+     * @param parallelSort true to sort the keys of the table on every core
+     * @return true if successful; false otherwise
+     */
+    public boolean populateIndex(ITable itable, String indexName, boolean parallelSort){
+        return pageBuffer.populateIndex(itable, indexName,
+                Double.parseDouble(System.getProperty("bulkload.fillfactor", "0.9")), parallelSort);
     }
 }
@@ -0,0 +1,154 @@
+package storagemanager;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Encodes and decodes string values. Every value is converted in one bulk operation over its
+ * bytes instead of one character at a time.
+ *
+ * UTF16 matches what DataOutputStream.writeChar produces, 2 bytes per character. UTF8 takes
+ * 1 byte per character for ASCII text, which makes varchar heavy pages a lot smaller.
+ */
+public enum StringCodec {
+    UTF16(StandardCharsets.UTF_16BE, (byte) 0),
+    UTF8(StandardCharsets.UTF_8, (byte) 1);
+
+    private final Charset charset;
+    // Stored in the page header flags so pages can be decoded whatever codec wrote them
+    private final byte flag;
+
+    StringCodec(Charset charset, byte flag) {
+        this.charset = charset;
+        this.flag = flag;
+    }
+
+    /**
+     * Gets the codec with the provided name
+     * @param name the name of the codec, either utf-16 or utf-8
+     * @return the codec; UTF16 if the name is not recognized
+     */
+    public static StringCodec fromName(String name) {
+        String normalized = name.trim().toUpperCase().replace("-", "");
+        for (StringCodec codec : values()) {
+            if (codec.name().equals(normalized)) {
+                return codec;
+            }
+        }
+        System.err.println("Unknown string encoding '" + name + "', using UTF-16");
+        return UTF16;
+    }
+
+    /**
+     * @param flags the flags byte of a page header
+     * @return the codec the page strings were written with
+     */
+    public static StringCodec fromFlag(byte flags) {
+        return (flags & UTF8.flag) != 0 ? UTF8 : UTF16;
+    }
+
+    public byte getFlag() {
+        return flag;
+    }
+
+    /**
+     * @param value the string to measure
+     * @return the number of bytes the string takes once encoded, without its length
+     */
+    public int encodedSize(String value) {
+        if (this == UTF16) {
+            return value.length() * 2;
+        }
+        int size = 0;
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c < 0x80) {
+                size++;
+            } else if (c < 0x800) {
+                size += 2;
+            } else if (Character.isSurrogate(c)) {
+                if (Character.isHighSurrogate(c) && i + 1 < value.length()
+                        && Character.isLowSurrogate(value.charAt(i + 1))) {
+                    // A surrogate pair is one 4 byte character
+                    size += 4;
+                    i++;
+                } else {
+                    // Unpaired surrogates are written as '?'
+                    size++;
+                }
+            } else {
+                size += 3;
+            }
+        }
+        return size;
+    }
+
+    /**
+     * Writes the string to the buffer as a 2 byte length followed by the encoded bytes.
+     * The length counts bytes for UTF8 and characters for UTF16.
+     * @param value the string to write
+     * @param out the buffer to write to
+     */
+    public void write(String value, ByteBuffer out) {
+        byte[] bytes = value.getBytes(charset);
+        out.putShort((short) (this == UTF16 ? value.length() : bytes.length));
+        out.put(bytes);
+    }
+
+    /**
+     * Reads a string written by write(String, ByteBuffer)
+     * @param in the buffer to read from
+     * @return the decoded string
+     */
+    public String read(ByteBuffer in) {
+        int length = in.getShort() & 0xFFFF;
+        if (this == UTF16) {
+            // Decoding through a char view is a plain copy, the UTF-16 charset decoder is not
+            char[] chars = new char[length];
+            in.asCharBuffer().get(chars);
+            in.position(in.position() + length * 2);
+            return new String(chars);
+        }
+        String value;
+        if (in.hasArray()) {
+            value = new String(in.array(), in.arrayOffset() + in.position(), length, charset);
+            in.position(in.position() + length);
+        } else {
+            byte[] bytes = new byte[length];
+            in.get(bytes);
+            value = new String(bytes, charset);
+        }
+        return value;
+    }
+
+    /**
+     * Writes the string to the stream as a 4 byte length followed by the encoded bytes.
+     * The length counts bytes for UTF8 and characters for UTF16.
+     * @param value the string to write
+     * @param out the stream to write to
+     */
+    public void write(String value, DataOutputStream out) throws IOException {
+        byte[] bytes = value.getBytes(charset);
+        out.writeInt(this == UTF16 ? value.length() : bytes.length);
+        out.write(bytes);
+    }
+
+    /**
+     * Reads a string written by write(String, DataOutputStream)
+     * @param in the stream to read from
+     * @return the decoded string
+     */
+    public String read(DataInputStream in) throws IOException {
+        int length = in.readInt();
+        byte[] bytes = new byte[this == UTF16 ? length * 2 : length];
+        in.readFully(bytes);
+        if (this == UTF16) {
+            return ByteBuffer.wrap(bytes).asCharBuffer().toString();
+        }
+        return new String(bytes, charset);
+    }
+}